@@ -0,0 +1,74 @@
+package representation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitboardBenchmark {
+
+    // A middlegame worth of pieces
+    private static final long BITS = 0x2C7A0118A4C3B52DL;
+
+    private Bitboard board;
+
+    @Setup
+    public void setup() {
+        this.board = new Bitboard(BITS);
+    }
+
+    // Checked file/rank access over the whole board
+    @Benchmark
+    public int getBit() {
+
+        int count = 0;
+        for (char file = 'A'; file <= 'H'; file++)
+            for (int rank = 1; rank <= 8; rank++)
+                if (this.board.getBit(file, rank))
+                    count++;
+        return count;
+    }
+
+    @Benchmark
+    public Bitboard setBit() {
+
+        for (char file = 'A'; file <= 'H'; file++)
+            for (int rank = 1; rank <= 8; rank++)
+                this.board.setBit(file, rank, ((file + rank) & 1) == 0);
+        return this.board;
+    }
+
+    // Square objects handed out by the Iterable view
+    @Benchmark
+    public int iterateSquares() {
+
+        int sum = 0;
+        for (Square square : this.board)
+            sum += square.getIndex();
+        return sum;
+    }
+
+    // Primitive bit-scan iteration
+    @Benchmark
+    public int iterateBits() {
+
+        int sum = 0;
+        for (long bits = this.board.getBits(); bits != 0; bits = Bitboard.popLowest(bits))
+            sum += Bitboard.lowestSquare(bits);
+        return sum;
+    }
+}
@@ -0,0 +1,107 @@
+package representation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChessboardBenchmark {
+
+    // Fixed corpus: opening, tactical middlegame, castling/promotion heavy, and endgame
+    @Param({
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    })
+    public String fen;
+
+    private Chessboard    board;
+    private int[]         moves;
+    private int           count;
+    private Perft         perft;
+    private Chessboard    scratch;
+    private StringBuilder output;
+
+    @Setup
+    public void setup() {
+        this.board = Chessboard.fromFen(this.fen);
+        this.moves = new int[Chessboard.MAX_MOVES];
+        this.count = this.board.generateMoves(this.moves);
+        this.perft = new Perft(this.board, 3, true);
+
+        this.scratch = new Chessboard();
+        this.output  = new StringBuilder();
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        return this.board.generateMoves(this.moves);
+    }
+
+    // Every root move made and taken back, including the incremental hash updates
+    @Benchmark
+    public long makeUnmake() {
+
+        long sum = 0;
+        for (int i = 0; i < this.count; i++) {
+            this.board.makeMove(this.moves[i]);
+            sum += this.board.getHash();
+            this.board.unmakeMove();
+        }
+        return sum;
+    }
+
+    // Full Zobrist recomputation, the cost incremental updates avoid
+    @Benchmark
+    public long computeHash() {
+        return this.board.computeHash();
+    }
+
+    // Tapering the incrementally kept score, what every quiescence node pays
+    @Benchmark
+    public int evaluate() {
+        return this.board.evaluate();
+    }
+
+    // Summing every piece-square entry, the cost the incremental score avoids
+    @Benchmark
+    public int computeScore() {
+        return this.board.computeScore();
+    }
+
+    // Reloading a board in place, the batch loading path
+    @Benchmark
+    public long loadFen() {
+        this.scratch.loadFen(this.fen);
+        return this.scratch.getHash();
+    }
+
+    @Benchmark
+    public int toFen() {
+        this.output.setLength(0);
+        this.board.toFen(this.output);
+        return this.output.length();
+    }
+
+    // Generation plus make/unmake together, bulk counted
+    @Benchmark
+    public long perft3() {
+        return this.perft.count(3);
+    }
+}
@@ -0,0 +1,330 @@
+package nnue;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import representation.Chessboard;
+import representation.IncrementalEvaluator;
+import representation.Piece;
+import representation.UnitTestException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+class Accumulator implements IncrementalEvaluator {
+
+    // https://www.chessprogramming.org/NNUE#Accumulator
+
+    // Widest vectors the machine has, ints taking the same width as the shorts they widen from
+    private static final VectorSpecies<Short>   SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS   = VectorSpecies.of(int.class, SHORTS.vectorShape());
+
+    // Levels allocated up front, well past any search depth. Boards may make more moves than
+    // that without a refresh, over a long game, so the stack doubles whenever it fills.
+    private static final int INITIAL_LEVELS = 256;
+
+    // Attributes
+    private Network     network;
+    private int         hidden;
+    private short[][][] values;
+    private int[][]     kings;
+    private boolean[][] isDirty;
+    private int         level;
+
+    // Constructor
+    Accumulator(Network network) {
+
+        this.network = network;
+        this.hidden  = network.hidden;
+        this.values  = new short[INITIAL_LEVELS][2][network.hidden];
+        this.kings   = new int[INITIAL_LEVELS][2];
+        this.isDirty = new boolean[INITIAL_LEVELS][2];
+    }
+
+    private void grow() {
+
+        int levels = this.values.length;
+        this.values  = Arrays.copyOf(this.values,  2 * levels);
+        this.kings   = Arrays.copyOf(this.kings,   2 * levels);
+        this.isDirty = Arrays.copyOf(this.isDirty, 2 * levels);
+        for (int level = levels; level < 2 * levels; level++) {
+            this.values[level]  = new short[2][this.hidden];
+            this.kings[level]   = new int[2];
+            this.isDirty[level] = new boolean[2];
+        }
+    }
+
+    @Override
+    public void refresh(Chessboard board) {
+
+        this.level = 0;
+        this.rebuild(board, Piece.BLACK);
+        this.rebuild(board, Piece.WHITE);
+    }
+
+    // Sum every piece's row from scratch for one perspective
+    private void rebuild(Chessboard board, int perspective) {
+
+        short[] values = this.values[this.level][perspective];
+        int     king   = Long.numberOfTrailingZeros(board.getPieces(perspective, Piece.KING));
+        System.arraycopy(this.network.inputBiases, 0, values, 0, this.hidden);
+
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                for (long pieces = board.getPieces(color, type); pieces != 0; pieces &= pieces - 1)
+                    this.addRow(values, Network.featureOffset(perspective, king,
+                            Long.numberOfTrailingZeros(pieces), type, color, this.hidden), true);
+
+        this.kings[this.level][perspective]   = king;
+        this.isDirty[this.level][perspective] = false;
+    }
+
+    @Override
+    public void push() {
+
+        if (this.level + 1 == this.values.length)
+            this.grow();
+        short[][] previous = this.values[this.level];
+        this.level++;
+        for (int perspective = Piece.BLACK; perspective <= Piece.WHITE; perspective++) {
+            System.arraycopy(previous[perspective], 0, this.values[this.level][perspective], 0, this.hidden);
+            this.kings[this.level][perspective]   = this.kings[this.level - 1][perspective];
+            this.isDirty[this.level][perspective] = this.isDirty[this.level - 1][perspective];
+        }
+    }
+
+    @Override
+    public void pop() {
+        this.level--;
+    }
+
+    @Override
+    public void add(int square, int type, int color) {
+        this.update(square, type, color, true);
+    }
+
+    @Override
+    public void remove(int square, int type, int color) {
+        this.update(square, type, color, false);
+    }
+
+    private void update(int square, int type, int color, boolean isAdded) {
+
+        for (int perspective = Piece.BLACK; perspective <= Piece.WHITE; perspective++) {
+
+            if (this.isDirty[this.level][perspective])
+                continue;
+
+            // Every row of a perspective depends on its king, moving it means starting over
+            if (type == Piece.KING && color == perspective) {
+                this.isDirty[this.level][perspective] = true;
+                continue;
+            }
+
+            this.addRow(this.values[this.level][perspective], Network.featureOffset(perspective,
+                    this.kings[this.level][perspective], square, type, color, this.hidden), isAdded);
+        }
+    }
+
+    // Add or subtract one row of input weights
+    private void addRow(short[] values, int offset, boolean isAdded) {
+
+        short[] weights = this.network.inputWeights;
+        int     bound   = SHORTS.loopBound(this.hidden);
+        int     index   = 0;
+
+        for (; index < bound; index += SHORTS.length()) {
+            ShortVector sum = ShortVector.fromArray(SHORTS, values, index);
+            ShortVector row = ShortVector.fromArray(SHORTS, weights, offset + index);
+            (isAdded ? sum.add(row) : sum.sub(row)).intoArray(values, index);
+        }
+        for (; index < this.hidden; index++)
+            values[index] += isAdded ? weights[offset + index] : -weights[offset + index];
+    }
+
+    @Override
+    public int evaluate(Chessboard board) {
+
+        // Kings that moved since the last refresh
+        for (int perspective = Piece.BLACK; perspective <= Piece.WHITE; perspective++)
+            if (this.isDirty[this.level][perspective])
+                this.rebuild(board, perspective);
+
+        int side = board.getSideToMove();
+        int sum  = this.dot(this.values[this.level][side], 0)
+                 + this.dot(this.values[this.level][1 - side], this.hidden);
+        return (sum + this.network.outputBias) * Network.SCALE / (Network.QA * Network.QB);
+    }
+
+    // Clipped ReLU of one half against its output weights, widened to ints before multiplying
+    private int dot(short[] values, int offset) {
+
+        short[]   weights = this.network.outputWeights;
+        int       bound   = SHORTS.loopBound(this.hidden);
+        int       index   = 0;
+        IntVector sum     = IntVector.zero(INTS);
+
+        for (; index < bound; index += SHORTS.length()) {
+            ShortVector clipped = ShortVector.fromArray(SHORTS, values, index).max((short)0).min((short)Network.QA);
+            ShortVector row     = ShortVector.fromArray(SHORTS, weights, offset + index);
+            for (int part = 0; part < 2; part++)
+                sum = sum.add(((IntVector)clipped.convert(VectorOperators.S2I, part))
+                         .mul((IntVector)row.convert(VectorOperators.S2I, part)));
+        }
+
+        int total = sum.reduceLanes(VectorOperators.ADD);
+        for (; index < this.hidden; index++)
+            total += Math.max(0, Math.min(Network.QA, values[index])) * weights[offset + index];
+        return total;
+    }
+
+    // Plain scalar evaluation from scratch, the reference the vectorized code must match
+    static int reference(Network network, Chessboard board) {
+
+        int   hidden = network.hidden;
+        int[] sums   = new int[2 * hidden];
+        int   side   = board.getSideToMove();
+
+        for (int half = 0; half < 2; half++) {
+
+            int perspective = half == 0 ? side : 1 - side;
+            int king        = Long.numberOfTrailingZeros(board.getPieces(perspective, Piece.KING));
+            for (int index = 0; index < hidden; index++)
+                sums[half * hidden + index] = network.inputBiases[index];
+
+            for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+                for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                    for (long pieces = board.getPieces(color, type); pieces != 0; pieces &= pieces - 1) {
+                        int offset = Network.featureOffset(perspective, king, Long.numberOfTrailingZeros(pieces),
+                                type, color, hidden);
+                        for (int index = 0; index < hidden; index++)
+                            sums[half * hidden + index] += network.inputWeights[offset + index];
+                    }
+        }
+
+        int sum = 0;
+        for (int index = 0; index < 2 * hidden; index++)
+            sum += Math.max(0, Math.min(Network.QA, (short)sums[index])) * network.outputWeights[index];
+        return (sum + network.outputBias) * Network.SCALE / (Network.QA * Network.QB);
+    }
+
+    // Unit testing and benchmarking
+    //   no arguments : check incremental updates against the scalar reference
+    //   bench        : time evaluations along random games with a full size network
+    public static void main(String[] args) throws IOException {
+
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(Network.random(256, 1));
+            return;
+        }
+
+        // A size that fills whole vectors and one that leaves a scalar tail
+        for (int hidden : new int[] {64, 40}) {
+
+            Network    network   = Network.random(hidden, hidden);
+            Chessboard board     = new Chessboard();
+            board.setEvaluator(network.newEvaluator());
+
+            // Random games, including castles, promotions and en passant, walked forward and back
+            Random random = new Random(3);
+            int[]  moves  = new int[Chessboard.MAX_MOVES];
+            for (int game = 0; game < 20; game++) {
+
+                int made = 0;
+                for (; made < 120; made++) {
+                    int count = board.generateMoves(moves);
+                    if (count == 0)
+                        break;
+                    board.makeMove(moves[random.nextInt(count)]);
+                    if (board.evaluate() != reference(network, board))
+                        throw new UnitTestException("Incremental evaluation is wrong after " + board.toFen());
+                }
+                for (; made > 0; made--) {
+                    board.unmakeMove();
+                    if ((made & 7) == 0 && board.evaluate() != reference(network, board))
+                        throw new UnitTestException("Unmade evaluation is wrong at " + board.toFen());
+                }
+            }
+
+            // Games longer than the levels allocated up front, without a refresh, grow the stack
+            board.loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+            String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+            for (int made = 0; made < 3 * INITIAL_LEVELS; made++)
+                board.makeMove(board.parseSan(shuffle[made % shuffle.length]));
+            board.makeMove(board.parseSan("e4"));
+            if (board.evaluate() != reference(network, board))
+                throw new UnitTestException("Long game evaluation is wrong.");
+            for (int made = 0; made <= 3 * INITIAL_LEVELS; made++)
+                board.unmakeMove();
+            if (board.evaluate() != reference(network, board))
+                throw new UnitTestException("Unwound long game evaluation is wrong.");
+
+            // Reloading in place refreshes the accumulator
+            board.loadFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+            if (board.evaluate() != reference(network, board))
+                throw new UnitTestException("Refreshed evaluation is wrong.");
+
+            // Saved weights load back the same
+            Path file = Files.createTempFile("network", ".nnue");
+            try {
+                network.save(file);
+                Network loaded = Network.load(file);
+                if (reference(loaded, board) != reference(network, board) || loaded.getHidden() != hidden)
+                    throw new UnitTestException("Saved network is wrong.");
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        // Anything else is refused
+        Path file = Files.createTempFile("network", ".nnue");
+        try {
+            Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+            boolean isRejected = false;
+            try {
+                Network.load(file);
+            } catch (IOException exception) {
+                isRejected = true;
+            }
+            if (!isRejected)
+                throw new UnitTestException("Bad network file accepted.");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void bench(Network network) {
+
+        Chessboard board = new Chessboard();
+        board.setEvaluator(network.newEvaluator());
+        Random random = new Random(5);
+        int[]  moves  = new int[Chessboard.MAX_MOVES];
+
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            long evals = 0;
+            long check = 0;
+            for (int game = 0; game < 200; game++) {
+                int made = 0;
+                for (; made < 100; made++) {
+                    int count = board.generateMoves(moves);
+                    if (count == 0)
+                        break;
+                    board.makeMove(moves[random.nextInt(count)]);
+                    check += board.evaluate();
+                    evals++;
+                }
+                for (; made > 0; made--)
+                    board.unmakeMove();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%,d make and evaluate pairs in %,d ms, %,d per second (%d)%n",
+                    evals, nanos / 1_000_000, evals * 1_000_000_000L / nanos, check);
+        }
+        System.out.println("Vector species: " + SHORTS);
+    }
+}
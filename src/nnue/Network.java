@@ -0,0 +1,147 @@
+package nnue;
+
+import representation.IncrementalEvaluator;
+import representation.Piece;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class Network {
+
+    // https://www.chessprogramming.org/NNUE
+
+    // HalfKA inputs: for each perspective, the king square of that side crossed with every
+    // piece of either color, kings included, on every square. The board is flipped vertically
+    // and the colors swapped for black, so both perspectives share one set of weights.
+    //
+    //   inputs -> hidden, once per perspective, kept incrementally by Accumulator
+    //   clipped ReLU of both halves, side to move first -> one output
+    //
+    // Weights are int16, the hidden layer quantized by QA and the output weights by QB.
+    static final int PIECES = 12;
+    static final int INPUTS = 64 * PIECES * 64;
+    static final int QA     = 255;
+    static final int QB     = 64;
+    static final int SCALE  = 400;
+
+    // File layout, little endian:
+    //   int magic, int version, int hidden size,
+    //   short input weights [INPUTS][hidden], short input biases [hidden],
+    //   short output weights [2][hidden], int output bias
+    private static final int MAGIC   = 0x45554E4E;
+    private static final int VERSION = 1;
+    private static final int HEADER  = 3 * Integer.BYTES;
+
+    // Attributes
+    final int     hidden;
+    final short[] inputWeights;
+    final short[] inputBiases;
+    final short[] outputWeights;
+    final int     outputBias;
+
+    // Constructor
+    private Network(int hidden, short[] inputWeights, short[] inputBiases, short[] outputWeights, int outputBias) {
+
+        this.hidden        = hidden;
+        this.inputWeights  = inputWeights;
+        this.inputBiases   = inputBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias    = outputBias;
+    }
+
+    // Row of input weights for a piece seen from a perspective
+    static int featureOffset(int perspective, int king, int square, int type, int color, int hidden) {
+
+        if (perspective == Piece.BLACK) {
+            king   ^= 56;
+            square ^= 56;
+        }
+        int piece = (color == perspective ? 0 : PIECES / 2) + type - Piece.KING;
+        return ((king * PIECES + piece) * 64 + square) * hidden;
+    }
+
+    public int getHidden() {
+        return this.hidden;
+    }
+
+    // A fresh accumulator to attach to one board
+    public IncrementalEvaluator newEvaluator() {
+        return new Accumulator(this);
+    }
+
+    // Load weights written in the layout above
+    public static Network load(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC)
+                throw new IOException(path + " is not a network file.");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException(path + " has version " + version + ", expected " + VERSION + ".");
+
+            int hidden = buffer.getInt();
+            if (hidden < 1 || hidden > 4096 || buffer.remaining() != expectedSize(hidden) - HEADER)
+                throw new IOException(path + " has the wrong size for a hidden layer of " + hidden + ".");
+
+            short[] inputWeights  = new short[INPUTS * hidden];
+            short[] inputBiases   = new short[hidden];
+            short[] outputWeights = new short[2 * hidden];
+            buffer.asShortBuffer().get(inputWeights);
+            buffer.position(buffer.position() + inputWeights.length * Short.BYTES);
+            buffer.asShortBuffer().get(inputBiases);
+            buffer.position(buffer.position() + inputBiases.length * Short.BYTES);
+            buffer.asShortBuffer().get(outputWeights);
+            buffer.position(buffer.position() + outputWeights.length * Short.BYTES);
+
+            return new Network(hidden, inputWeights, inputBiases, outputWeights, buffer.getInt());
+        }
+    }
+
+    // Write the weights in the layout load expects
+    public void save(Path path) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)expectedSize(this.hidden)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(this.hidden);
+        buffer.asShortBuffer().put(this.inputWeights);
+        buffer.position(buffer.position() + this.inputWeights.length * Short.BYTES);
+        buffer.asShortBuffer().put(this.inputBiases);
+        buffer.position(buffer.position() + this.inputBiases.length * Short.BYTES);
+        buffer.asShortBuffer().put(this.outputWeights);
+        buffer.position(buffer.position() + this.outputWeights.length * Short.BYTES);
+        buffer.putInt(this.outputBias);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    private static long expectedSize(int hidden) {
+        return HEADER + ((long)INPUTS * hidden + hidden + 2L * hidden) * Short.BYTES + Integer.BYTES;
+    }
+
+    // Small random weights, for testing and benchmarking without a trained file
+    public static Network random(int hidden, long seed) {
+
+        Random random = new Random(seed);
+        short[] inputWeights  = new short[INPUTS * hidden];
+        short[] inputBiases   = new short[hidden];
+        short[] outputWeights = new short[2 * hidden];
+        for (int index = 0; index < inputWeights.length; index++)
+            inputWeights[index] = (short)(random.nextInt(129) - 64);
+        for (int index = 0; index < hidden; index++)
+            inputBiases[index] = (short)random.nextInt(128);
+        for (int index = 0; index < outputWeights.length; index++)
+            outputWeights[index] = (short)(random.nextInt(257) - 128);
+        return new Network(hidden, inputWeights, inputBiases, outputWeights, random.nextInt(2001) - 1000);
+    }
+}
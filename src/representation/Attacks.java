@@ -0,0 +1,94 @@
+package representation;
+
+class Attacks {
+
+    // https://www.chessprogramming.org/Square_Attacked_By
+
+    // Flat per-square tables, one array index away on the hot path. Attacks are symmetric
+    // for every piece but pawns, so "what attacks this square" is looked up as "what this
+    // square would attack" from the target, pawns using the opposite color's table.
+    static final long[][] PAWNS   = new long[2][64];
+    static final long[]   KNIGHTS = new long[64];
+    static final long[]   KINGS   = new long[64];
+
+    // Squares strictly between two squares sharing a rank, file or diagonal, empty otherwise
+    static final long[][] BETWEEN = new long[64][64];
+
+    // The whole line through two aligned squares, edge to edge, empty otherwise
+    static final long[][] LINE    = new long[64][64];
+
+    static {
+
+        long[][][] captureMoves = Piece.getCaptureMoves();
+        for (int square = 0; square < 64; square++) {
+            PAWNS[Piece.BLACK][square] = captureMoves[Piece.PAWN][Piece.BLACK][square];
+            PAWNS[Piece.WHITE][square] = captureMoves[Piece.PAWN][Piece.WHITE][square];
+            KNIGHTS[square]            = captureMoves[Piece.KNIGHT][Piece.WHITE][square];
+            KINGS[square]              = captureMoves[Piece.KING][Piece.WHITE][square];
+        }
+
+        for (int from = 0; from < 64; from++)
+            for (int to = 0; to < 64; to++) {
+
+                if (from == to)
+                    continue;
+
+                long fromBit = Bitboard.bit(from);
+                long toBit   = Bitboard.bit(to);
+
+                if ((Magic.rookAttacks(from, 0L) & toBit) != 0) {
+                    BETWEEN[from][to] = Magic.rookAttacks(from, toBit) & Magic.rookAttacks(to, fromBit);
+                    LINE[from][to]    = (Magic.rookAttacks(from, 0L) & Magic.rookAttacks(to, 0L)) | fromBit | toBit;
+                } else if ((Magic.bishopAttacks(from, 0L) & toBit) != 0) {
+                    BETWEEN[from][to] = Magic.bishopAttacks(from, toBit) & Magic.bishopAttacks(to, fromBit);
+                    LINE[from][to]    = (Magic.bishopAttacks(from, 0L) & Magic.bishopAttacks(to, 0L)) | fromBit | toBit;
+                }
+            }
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        int a1 = Bitboard.indexFromFileRank('A', 1);
+        int c3 = Bitboard.indexFromFileRank('C', 3);
+        int h8 = Bitboard.indexFromFileRank('H', 8);
+        int e1 = Bitboard.indexFromFileRank('E', 1);
+        int e8 = Bitboard.indexFromFileRank('E', 8);
+        int b3 = Bitboard.indexFromFileRank('B', 3);
+
+        // Diagonal A1-H8
+        Bitboard board = new Bitboard();
+        board.setBit('B', 2, true);
+        if (!board.equals(new Bitboard(BETWEEN[a1][c3])) || BETWEEN[a1][c3] != BETWEEN[c3][a1])
+            throw new UnitTestException("Diagonal between is bad.");
+
+        for (char file = 'A'; file <= 'H'; file++)
+            board.setBit(file, file - 'A' + 1, true);
+        if (!board.equals(new Bitboard(LINE[a1][c3])) || LINE[c3][h8] != LINE[a1][c3])
+            throw new UnitTestException("Diagonal line is bad.");
+
+        // File E
+        board = new Bitboard();
+        for (int rank = 2; rank <= 7; rank++)
+            board.setBit('E', rank, true);
+        if (!board.equals(new Bitboard(BETWEEN[e1][e8])))
+            throw new UnitTestException("File between is bad.");
+
+        // Neighbours have nothing between, unaligned squares have neither table
+        if (BETWEEN[a1][Bitboard.indexFromFileRank('B', 1)] != 0 || BETWEEN[a1][b3] != 0 || LINE[a1][b3] != 0
+                || LINE[a1][a1] != 0)
+            throw new UnitTestException("Unaligned squares are bad.");
+
+        // Pawn tables point forward for their color
+        board = new Bitboard();
+        board.setBit('D', 5, true);
+        board.setBit('F', 5, true);
+        if (!board.equals(new Bitboard(PAWNS[Piece.WHITE][Bitboard.indexFromFileRank('E', 4)])))
+            throw new UnitTestException("White pawn attacks are bad.");
+
+        board = new Bitboard();
+        board.setBit('G', 6, true);
+        if (!board.equals(new Bitboard(PAWNS[Piece.BLACK][Bitboard.indexFromFileRank('H', 7)])))
+            throw new UnitTestException("Black pawn attacks are bad.");
+    }
+}
@@ -32,6 +32,20 @@ class Bitboard implements Iterable<Square> {
         return (file - 'A') + (rank - 1) * 8;
     }
 
+    // Primitive square helpers, squares are 0..63 with A1 = 0 and H8 = 63
+    static long bit(int square)    { return ONE << square; }
+    static char fileOf(int square) { return (char)('A' + (square & 7)); }
+    static int  rankOf(int square) { return (square >>> 3) + 1; }
+
+    // Raw bits
+    long getBits() { return this.bits; }
+
+    // Allocation-free iteration over set bits, lowest square first:
+    // for (long bits = board; bits != 0; bits = popLowest(bits)) { int square = lowestSquare(bits); ... }
+    static int  lowestSquare(long bits) { return Long.numberOfTrailingZeros(bits); }
+    static long popLowest(long bits)    { return bits & (bits - 1); }
+    static int  count(long bits)        { return Long.bitCount(bits); }
+
     // Bit getter
     private boolean getBit(int index) {
         return (this.bits >> index & ONE) > 0;
@@ -97,30 +111,26 @@ class Bitboard implements Iterable<Square> {
     private class BitboardIterator implements Iterator<Square> {
 
         // Attribute
-        ArrayList<Square> list;
+        long remaining;
 
         private BitboardIterator() {
-
-            // Create the return array list
-            this.list = new ArrayList<>();
-
-            // Run through all the bits
-            for (char file = 'A'; file <= 'H'; file++)
-                for (int rank = 1; rank <= 8; rank++)
-                    if (Bitboard.this.getBit(file, rank))
-                        this.list.add(new Square(file, rank));
+            this.remaining = Bitboard.this.bits;
         }
 
         @Override
         public boolean hasNext() {
-            return !this.list.isEmpty();
+            return this.remaining != ZERO;
         }
 
         @Override
         public Square next() {
-            if (this.list.isEmpty())
+            if (this.remaining == ZERO)
                 throw new NoSuchElementException("Out of elements.");
-            return this.list.remove(this.list.size() - 1);
+
+            // Hand out the highest square first
+            int square = 63 - Long.numberOfLeadingZeros(this.remaining);
+            this.remaining ^= bit(square);
+            return new Square(square);
         }
     }
 
@@ -214,5 +224,18 @@ class Bitboard implements Iterable<Square> {
             throw new UnitTestException("Iterator broke.");
         if (squares.get(2).getFile() != 'E' || squares.get(2).getRank() != 4)
             throw new UnitTestException("Iterator broke.");
+
+        // Test the primitive iteration
+        int[] expected = {indexFromFileRank('E', 4), indexFromFileRank('F', 6), indexFromFileRank('H', 7)};
+        int   found    = 0;
+
+        for (long bits = board.getBits(); bits != 0; bits = popLowest(bits)) {
+            if (found >= expected.length || lowestSquare(bits) != expected[found])
+                throw new UnitTestException("Primitive iteration broke.");
+            found++;
+        }
+
+        if (found != count(board.getBits()))
+            throw new UnitTestException("Primitive iteration broke.");
     }
 }
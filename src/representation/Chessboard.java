@@ -1,56 +1,192 @@
 package representation;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
 
-class Chessboard {
+public class Chessboard {
 
     // Hold all the capture and quiet move bitmasks
-    private static final Bitboard[][][][] captureMoves = Piece.getCaptureMoves();
-    private static final Bitboard[][][][] quietMoves   = Piece.getQuietMoves();
+    private static final long[][][] quietMoves   = Piece.getQuietMoves();
 
     // Hold a bitmask for each piece type and for each color
-    private Bitboard[] boards;
+    private long[] boards;
 
-    // Keep track of en passant rights and castling rights
-    private SpecialFlags flags;
+    // Type of the piece on each square, NONE if empty, mirroring the boards for direct lookup
+    private byte[] mailbox;
+
+    // Boards of a binary record, checked here before the position takes them
+    private long[] recordBoards;
+
+    // Keep track of en passant rights and castling rights, packed as SpecialFlags describes
+    private int flags;
 
     // Keep track of the turn number
     private int ply;
 
+    // Plies since the last capture or pawn move, for the fifty move rule
+    private int halfMoves;
+
+    // Zobrist key of the position, kept up to date by every change
+    private long hash;
+
+    // Zobrist key of the pawns only, for the pawn structure cache
+    private long pawnHash;
+
+    // Packed material and piece-square score from white's side, kept up to date like the key
+    private int score;
+
+    // Optional cache of pawn structure scores, owned by whoever searches this board
+    private PawnTable pawnTable;
+
+    // Optional evaluator replacing the handcrafted one, told about every move
+    private IncrementalEvaluator evaluator;
+
+    // Upper bound on the number of legal moves in any position
+    public static final int MAX_MOVES = 256;
+
+    // Upper bound on the legal moves of a single piece, with scratch space to hold them
+    private static final int MAX_PIECE_MOVES = 32;
+    private int[] pieceMoves;
+
+    // Plain piece values for exchanges, indexed by type
+    private static final int[] SEE_VALUES = {0, 0, 20000, 300, 500, 300, 900, 100};
+
+    // Recapturing order, least valuable first
+    private static final int[] CHEAPEST = {Piece.PAWN, Piece.KNIGHT, Piece.BISHOP, Piece.ROOK, Piece.QUEEN, Piece.KING};
+
+    // Rank masks for promotions
+    private static final long RANK_1 = 0x00000000000000FFL;
+    private static final long RANK_8 = 0xFF00000000000000L;
+
+    // Undo stack, one entry per move made, doubled whenever a long game fills it
+    static final int INITIAL_HISTORY = 1024;
+    private int[]  moveHistory;
+    private int[]  flagHistory;
+    private long[] hashHistory;
+    private long[] pawnHashHistory;
+    private int[]  clockHistory;
+    private int[]  scoreHistory;
+    private int    historySize;
+
     // Protection methods
     private boolean isTypeLegal(int type)   { return 2 <= type && type < 8; }
     private boolean isColorLegal(int color) { return 0 <= color && color < 2; }
 
     // More helper functions
-    private int getColor(char file, int rank) {
+    private int getColor(int square) {
 
         for (int color = 0; color < 2; color++)
-            if (this.boards[color].getBit(file, rank))
+            if ((this.boards[color] & Bitboard.bit(square)) != 0)
                 return color;
         return Piece.NONE;
     }
 
-    private int getType(char file, int rank) {
-
-        for (int type = 2; type < 8; type++)
-            if (this.boards[type].getBit(file, rank))
-                return type;
-        return Piece.NONE;
+    private int getType(int square) {
+        return this.mailbox[square];
     }
 
     // Default constructor
-    Chessboard() {
+    public Chessboard() {
 
         // Allocate boards
-        this.boards = new Bitboard[8];
-        for (int i = 0; i < 8; i++)
-            this.boards[i] = new Bitboard();
+        this.allocate();
 
         // Load the defaults
         this.loadDefaults();
     }
 
-    // Helper function for managing boards
+    // Board loaded once from Forsyth-Edwards Notation, without setting up the defaults first
+    private Chessboard(CharSequence fen) {
+        this.allocate();
+        this.loadFen(fen);
+    }
+
+    // Copy constructor, history included so the copy still sees repetitions and can unmake
+    public Chessboard(Chessboard other) {
+
+        // Allocate boards
+        this.allocate();
+
+        // Copy the position
+        System.arraycopy(other.boards, 0, this.boards, 0, this.boards.length);
+        System.arraycopy(other.mailbox, 0, this.mailbox, 0, this.mailbox.length);
+        this.flags     = other.flags;
+        this.ply       = other.ply;
+        this.halfMoves = other.halfMoves;
+        this.hash      = other.hash;
+        this.pawnHash  = other.pawnHash;
+        this.score     = other.score;
+
+        // Copy the history
+        this.historySize = other.historySize;
+        this.reserveHistory(this.historySize);
+        System.arraycopy(other.moveHistory,     0, this.moveHistory,     0, this.historySize);
+        System.arraycopy(other.flagHistory,     0, this.flagHistory,     0, this.historySize);
+        System.arraycopy(other.hashHistory,     0, this.hashHistory,     0, this.historySize);
+        System.arraycopy(other.pawnHashHistory, 0, this.pawnHashHistory, 0, this.historySize);
+        System.arraycopy(other.clockHistory,    0, this.clockHistory,    0, this.historySize);
+        System.arraycopy(other.scoreHistory,    0, this.scoreHistory,    0, this.historySize);
+    }
+
+    // Build a board from Forsyth-Edwards Notation
+    public static Chessboard fromFen(CharSequence fen) {
+        return new Chessboard(fen);
+    }
+
+    private void allocate() {
+        this.boards          = new long[8];
+        this.mailbox         = new byte[64];
+        this.recordBoards    = new long[8];
+        this.pieceMoves      = new int[MAX_PIECE_MOVES];
+        this.moveHistory     = new int[INITIAL_HISTORY];
+        this.flagHistory     = new int[INITIAL_HISTORY];
+        this.hashHistory     = new long[INITIAL_HISTORY];
+        this.pawnHashHistory = new long[INITIAL_HISTORY];
+        this.clockHistory    = new int[INITIAL_HISTORY];
+        this.scoreHistory    = new int[INITIAL_HISTORY];
+        Arrays.fill(this.mailbox, (byte)Piece.NONE);
+    }
+
+    // Make room for at least this many entries on the undo stack, keeping what it holds
+    private void reserveHistory(int capacity) {
+
+        if (capacity <= this.moveHistory.length)
+            return;
+        int size = Math.max(capacity, 2 * this.moveHistory.length);
+        this.moveHistory     = Arrays.copyOf(this.moveHistory,     size);
+        this.flagHistory     = Arrays.copyOf(this.flagHistory,     size);
+        this.hashHistory     = Arrays.copyOf(this.hashHistory,     size);
+        this.pawnHashHistory = Arrays.copyOf(this.pawnHashHistory, size);
+        this.clockHistory    = Arrays.copyOf(this.clockHistory,    size);
+        this.scoreHistory    = Arrays.copyOf(this.scoreHistory,    size);
+    }
+
+    // Helper function for managing boards, unchecked for the hot path
+    private void setBit(int square, int type, int color, boolean isActive) {
+
+        // Only flip the key and score when the piece actually appears or disappears
+        if (((this.boards[type] & this.boards[color] & Bitboard.bit(square)) != 0) != isActive) {
+            this.hash  ^= Zobrist.PIECES[color][type][square];
+            if (type == Piece.PAWN)
+                this.pawnHash ^= Zobrist.PIECES[color][type][square];
+            this.score += isActive ? Evaluation.PIECE_SQUARE[color][type][square]
+                                   : -Evaluation.PIECE_SQUARE[color][type][square];
+        }
+
+        if (isActive) {
+            this.boards[color]   |= Bitboard.bit(square);
+            this.boards[type]    |= Bitboard.bit(square);
+            this.mailbox[square]  = (byte)type;
+        } else {
+            this.boards[color] &= ~Bitboard.bit(square);
+            this.boards[type]  &= ~Bitboard.bit(square);
+            if (this.mailbox[square] == type)
+                this.mailbox[square] = Piece.NONE;
+        }
+    }
+
+    // Validated variant for setting up positions
     private void setBit(char file, int rank, int type, int color, boolean isActive) {
 
         // Validate boards input
@@ -60,30 +196,959 @@ class Chessboard {
             throw new IllegalArgumentException("Color specified is illegal.");
 
         // Set the boards
-        this.boards[color].setBit(file, rank, isActive);
-        this.boards[type] .setBit(file, rank, isActive);
+        this.setBit(Bitboard.indexFromFileRank(file, rank), type, color, isActive);
+    }
+
+    // Pieces of both colors attacking a square, given an occupancy
+    public long attackersTo(int square, long occupancy) {
+
+        long rooks   = this.boards[Piece.ROOK]   | this.boards[Piece.QUEEN];
+        long bishops = this.boards[Piece.BISHOP] | this.boards[Piece.QUEEN];
+
+        return (Attacks.PAWNS[Piece.WHITE][square] & this.boards[Piece.PAWN] & this.boards[Piece.BLACK])
+             | (Attacks.PAWNS[Piece.BLACK][square] & this.boards[Piece.PAWN] & this.boards[Piece.WHITE])
+             | (Attacks.KNIGHTS[square] & this.boards[Piece.KNIGHT])
+             | (Attacks.KINGS[square]   & this.boards[Piece.KING])
+             | (Magic.rookAttacks(square, occupancy)   & rooks)
+             | (Magic.bishopAttacks(square, occupancy) & bishops);
+    }
+
+    // Whether any piece of a color attacks a square
+    public boolean isSquareAttacked(int square, int byColor) {
+        return isAttacked(this.boards, square, byColor, this.boards[Piece.WHITE] | this.boards[Piece.BLACK]);
     }
 
-    // Generate all quiet moves
-    private ArrayList<Move> generateQuietMoves() {
+    // Same, on any boards, with one color's pieces only and no branch until the single test at the end
+    private static boolean isAttacked(long[] boards, int square, int byColor, long occupancy) {
+
+        long them    = boards[byColor];
+        long rooks   = (boards[Piece.ROOK]   | boards[Piece.QUEEN]) & them;
+        long bishops = (boards[Piece.BISHOP] | boards[Piece.QUEEN]) & them;
+
+        return ((Attacks.PAWNS[byColor ^ 1][square] & boards[Piece.PAWN] & them)
+              | (Attacks.KNIGHTS[square] & boards[Piece.KNIGHT] & them)
+              | (Attacks.KINGS[square]   & boards[Piece.KING]   & them)
+              | (Magic.rookAttacks(square, occupancy)   & rooks)
+              | (Magic.bishopAttacks(square, occupancy) & bishops)) != 0;
+    }
+
+    // Static exchange evaluation: whether the captures a legal move starts on its target square
+    // win at least the threshold, both sides recapturing with their least valuable piece and
+    // free to stop. Sliders behind each capturer join in as it leaves. Pins are ignored.
+    // https://www.chessprogramming.org/Static_Exchange_Evaluation
+    public boolean see(int move, int threshold) {
+
+        if (Move.isCastle(move))
+            return threshold <= 0;
+
+        int from  = Move.getFrom(move);
+        int to    = Move.getTo(move);
+        int piece = this.getType(from);
+
+        // What the move wins outright, then what it risks standing on the square
+        int swap = -threshold;
+        if (Move.isCapture(move))
+            swap += SEE_VALUES[Move.getCaptured(move)];
+        if (Move.isPromotion(move)) {
+            piece = Move.getPromotedPiece(move);
+            swap += SEE_VALUES[piece] - SEE_VALUES[Piece.PAWN];
+        }
+        if (swap < 0)
+            return false;
+
+        swap = SEE_VALUES[piece] - swap;
+        if (swap <= 0)
+            return true;
+
+        long occupancy = (this.boards[Piece.WHITE] | this.boards[Piece.BLACK]) ^ Bitboard.bit(from) | Bitboard.bit(to);
+        if (Move.getCode(move) == Move.EN_PASSANT)
+            occupancy ^= Bitboard.bit(this.getSideToMove() == Piece.WHITE ? to - 8 : to + 8);
+
+        long rooks     = this.boards[Piece.ROOK]   | this.boards[Piece.QUEEN];
+        long bishops   = this.boards[Piece.BISHOP] | this.boards[Piece.QUEEN];
+        long attackers = this.attackersTo(to, occupancy) & occupancy;
+        int  color     = this.getSideToMove();
+
+        // Whether the side that captured last comes out ahead if the other side stops here
+        boolean isWinning = true;
+        while (true) {
+
+            color     ^= 1;
+            attackers &= occupancy;
+            long own   = attackers & this.boards[color];
+            if (own == 0)
+                break;
+            isWinning = !isWinning;
+
+            int  type     = Piece.KING;
+            long capturer = 0L;
+            for (int cheapest : CHEAPEST) {
+                capturer = own & this.boards[cheapest];
+                if (capturer != 0) {
+                    type = cheapest;
+                    break;
+                }
+            }
+
+            // The king may only take last
+            if (type == Piece.KING)
+                return (attackers & ~this.boards[color]) != 0 ? !isWinning : isWinning;
+
+            swap = SEE_VALUES[type] - swap;
+            if (swap < (isWinning ? 1 : 0))
+                break;
+
+            occupancy ^= capturer & -capturer;
+            if (type == Piece.PAWN || type == Piece.BISHOP || type == Piece.QUEEN)
+                attackers |= Magic.bishopAttacks(to, occupancy) & bishops;
+            if (type == Piece.ROOK || type == Piece.QUEEN)
+                attackers |= Magic.rookAttacks(to, occupancy) & rooks;
+        }
+        return isWinning;
+    }
+
+    // Squares a non-pawn piece attacks from a square
+    private static long getAttacks(int square, int type, long occupancy) {
+
+        switch (type) {
+            case Piece.KNIGHT: return Attacks.KNIGHTS[square];
+            case Piece.ROOK:   return Magic.rookAttacks(square, occupancy);
+            case Piece.BISHOP: return Magic.bishopAttacks(square, occupancy);
+            case Piece.QUEEN:  return Magic.queenAttacks(square, occupancy);
+            default:           return Attacks.KINGS[square];
+        }
+    }
+
+    // Find our pieces pinned to our king, each of which may only move along its line to the king
+    private long findPinned(int king, long own, long opp, long occupancy) {
+
+        long rooks   = this.boards[Piece.ROOK]   | this.boards[Piece.QUEEN];
+        long bishops = this.boards[Piece.BISHOP] | this.boards[Piece.QUEEN];
+        long pinned  = 0L;
+
+        // Enemy sliders that would see the king if only enemy pieces were on the board
+        long snipers = ((Magic.rookAttacks(king, opp) & rooks) | (Magic.bishopAttacks(king, opp) & bishops)) & opp;
+
+        for (; snipers != 0; snipers = Bitboard.popLowest(snipers)) {
+
+            long blockers = Attacks.BETWEEN[king][Bitboard.lowestSquare(snipers)] & occupancy;
+
+            // Exactly one blocker, and it is ours
+            if (blockers != 0 && Bitboard.popLowest(blockers) == 0 && (blockers & own) != 0)
+                pinned |= blockers;
+        }
+        return pinned;
+    }
+
+    // Write one move per target square
+    private int addMoves(int[] moves, int count, int from, long targets, long opp) {
+
+        for (; targets != 0; targets = Bitboard.popLowest(targets)) {
+            int to = Bitboard.lowestSquare(targets);
+            if ((opp & Bitboard.bit(to)) != 0)
+                moves[count++] = Move.encode(from, to, Move.CAPTURE, this.getType(to));
+            else
+                moves[count++] = Move.encode(from, to, Move.QUIET);
+        }
+        return count;
+    }
+
+    // Write all four promotions, best piece first
+    private static int addPromotions(int[] moves, int count, int from, int to, int code, int captured) {
+
+        moves[count++] = Move.encode(from, to, code | Piece.QUEEN  - Piece.KNIGHT, captured);
+        moves[count++] = Move.encode(from, to, code | Piece.ROOK   - Piece.KNIGHT, captured);
+        moves[count++] = Move.encode(from, to, code | Piece.BISHOP - Piece.KNIGHT, captured);
+        moves[count++] = Move.encode(from, to, code | Piece.KNIGHT - Piece.KNIGHT, captured);
+        return count;
+    }
+
+    // Castle if the rights are there, the king and rook are home, the path is empty and the king
+    // never crosses an attacked square
+    private int addCastle(int[] moves, int count, int king, int rook, int to, int code, int oppColor, long occupancy) {
+
+        if (king != (rook & 56) + 4)
+            return count;
+
+        long path    = Attacks.BETWEEN[king][rook];
+        long crossed = Attacks.BETWEEN[king][to] | Bitboard.bit(to);
+
+        if ((occupancy & path) != 0 || (this.boards[Piece.ROOK] & ~this.boards[oppColor] & Bitboard.bit(rook)) == 0)
+            return count;
 
-        // Create the return array
-        ArrayList<Move> moves = new ArrayList<>();
+        for (; crossed != 0; crossed = Bitboard.popLowest(crossed))
+            if (isAttacked(this.boards, Bitboard.lowestSquare(crossed), oppColor, occupancy))
+                return count;
+
+        moves[count++] = Move.encode(king, to, code);
+        return count;
+    }
+
+    // Generate all legal moves into the buffer, returning how many were written
+    public int generateMoves(int[] moves) {
+        return this.generate(moves, 0, -1L, true, true);
+    }
+
+    // Legal captures, en passant and promotions, written after the first count entries
+    public int generateNoisy(int[] moves, int count) {
+        return this.generate(moves, count, -1L, true, false);
+    }
+
+    // Every other legal move, castling included, written after the first count entries
+    public int generateQuiets(int[] moves, int count) {
+        return this.generate(moves, count, -1L, false, true);
+    }
+
+    // Whether a move, typically remembered from some other position, is legal here. Only the
+    // moves of the piece on its departing square are generated to find out.
+    public boolean isLegal(int move) {
+
+        int from = Move.getFrom(move);
+        if (move == Move.NONE || (this.boards[this.getSideToMove()] & Bitboard.bit(from)) == 0)
+            return false;
+
+        int count = this.generate(this.pieceMoves, 0, Bitboard.bit(from), true, true);
+        for (int i = 0; i < count; i++)
+            if (this.pieceMoves[i] == move)
+                return true;
+        return false;
+    }
+
+    // Legal moves of the given pieces, noisy ones, quiet ones or both
+    private int generate(int[] moves, int count, long movers, boolean isNoisy, boolean isQuiet) {
 
         // Determine whose turn it is
         int curColor = (this.ply + Piece.BLACK) % 2;
         int oppColor = (this.ply + Piece.BLACK + 1) % 2;
 
-        // Run through all pieces of current color
-        for (Square from : this.boards[curColor]) {
+        long own       = this.boards[curColor];
+        long opp       = this.boards[oppColor];
+        long occupancy = own | opp;
+        int  king      = Bitboard.lowestSquare(this.boards[Piece.KING] & own);
+        long kingBit   = Bitboard.bit(king);
+
+        // Destinations wanted, and which pawn pushes count as noisy
+        int  forward  = curColor == Piece.WHITE ? 8 : -8;
+        long lastRank = curColor == Piece.WHITE ? RANK_8 : RANK_1;
+        long wanted   = (isNoisy ? opp : 0L) | (isQuiet ? ~occupancy : 0L);
+        long pushes   = (isNoisy ? lastRank : 0L) | (isQuiet ? ~lastRank : 0L);
+
+        // The king may never step onto an attacked square, so look through it while testing
+        if ((movers & kingBit) != 0) {
+            long kingless = occupancy ^ kingBit;
+            long safe     = 0L;
+            for (long targets = Attacks.KINGS[king] & wanted; targets != 0; targets = Bitboard.popLowest(targets)) {
+                int to = Bitboard.lowestSquare(targets);
+                if (!isAttacked(this.boards, to, oppColor, kingless))
+                    safe |= Bitboard.bit(to);
+            }
+            count = this.addMoves(moves, count, king, safe, opp);
+        }
 
-            continue;
+        // Only the king may move out of double check
+        long checkers = this.attackersTo(king, occupancy) & opp;
+        if (Bitboard.popLowest(checkers) != 0)
+            return count;
 
+        // Otherwise everyone else must capture the checker or block it
+        long checkMask = -1L;
+        if (checkers != 0)
+            checkMask = checkers | Attacks.BETWEEN[king][Bitboard.lowestSquare(checkers)];
+
+        long pinned = this.findPinned(king, own, opp, occupancy);
+
+        // Knights and sliders
+        for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++)
+            for (long pieces = this.boards[type] & own & movers; pieces != 0; pieces = Bitboard.popLowest(pieces)) {
+
+                int  from    = Bitboard.lowestSquare(pieces);
+                long targets = getAttacks(from, type, occupancy) & wanted & checkMask;
+                if ((pinned & Bitboard.bit(from)) != 0)
+                    targets &= Attacks.LINE[king][from];
+
+                count = this.addMoves(moves, count, from, targets, opp);
+            }
 
+        // Pawns
+        for (long pieces = this.boards[Piece.PAWN] & own & movers; pieces != 0; pieces = Bitboard.popLowest(pieces)) {
 
+            int  from    = Bitboard.lowestSquare(pieces);
+            long targets = isNoisy ? Attacks.PAWNS[curColor][from] & opp : 0L;
+
+            // The double push needs both squares empty
+            if ((occupancy & Bitboard.bit(from + forward)) == 0)
+                targets |= quietMoves[Piece.PAWN][curColor][from] & ~occupancy & pushes;
+
+            targets &= checkMask;
+            if ((pinned & Bitboard.bit(from)) != 0)
+                targets &= Attacks.LINE[king][from];
+
+            for (; targets != 0; targets = Bitboard.popLowest(targets)) {
+
+                int to       = Bitboard.lowestSquare(targets);
+                int captured = (opp & Bitboard.bit(to)) != 0 ? this.getType(to) : Piece.NONE;
+
+                if ((lastRank & Bitboard.bit(to)) != 0)
+                    count = addPromotions(moves, count, from, to,
+                            captured != Piece.NONE ? Move.PROMOTION_CAPTURE : Move.PROMOTION, captured);
+                else if (captured != Piece.NONE)
+                    moves[count++] = Move.encode(from, to, Move.CAPTURE, captured);
+                else
+                    moves[count++] = Move.encode(from, to, to - from == 2 * forward ? Move.DOUBLE_PAWN_PUSH : Move.QUIET);
+            }
         }
 
-        return moves;
+        // En passant, tested directly since removing two pawns from a rank can uncover the king
+        int to = SpecialFlags.getEnPassantSquare(this.flags);
+        if (to != 0 && isNoisy) {
+
+            int  captured = to - forward;
+            long pawns    = Attacks.PAWNS[oppColor][to] & this.boards[Piece.PAWN] & own & movers;
+
+            for (; pawns != 0; pawns = Bitboard.popLowest(pawns)) {
+
+                int  from  = Bitboard.lowestSquare(pawns);
+                long after = (occupancy ^ Bitboard.bit(from) ^ Bitboard.bit(captured)) | Bitboard.bit(to);
+
+                if ((this.attackersTo(king, after) & opp & ~Bitboard.bit(captured)) == 0)
+                    moves[count++] = Move.encode(from, to, Move.EN_PASSANT, Piece.PAWN);
+            }
+        }
+
+        // Castling, never out of check
+        if (checkers == 0 && isQuiet && (movers & kingBit) != 0) {
+            if (curColor == Piece.WHITE) {
+                if (SpecialFlags.canCastle(this.flags, SpecialFlags.WHITE_SHORT))
+                    count = this.addCastle(moves, count, king, 7, 6, Move.KING_CASTLE, oppColor, occupancy);
+                if (SpecialFlags.canCastle(this.flags, SpecialFlags.WHITE_LONG))
+                    count = this.addCastle(moves, count, king, 0, 2, Move.QUEEN_CASTLE, oppColor, occupancy);
+            } else {
+                if (SpecialFlags.canCastle(this.flags, SpecialFlags.BLACK_SHORT))
+                    count = this.addCastle(moves, count, king, 63, 62, Move.KING_CASTLE, oppColor, occupancy);
+                if (SpecialFlags.canCastle(this.flags, SpecialFlags.BLACK_LONG))
+                    count = this.addCastle(moves, count, king, 56, 58, Move.QUEEN_CASTLE, oppColor, occupancy);
+            }
+        }
+
+        return count;
+    }
+
+    // Color whose turn it is
+    public int getSideToMove() {
+        return (this.ply + Piece.BLACK) % 2;
+    }
+
+    // Type of the piece on a square, NONE if empty
+    public int getPieceType(int square) {
+        return this.getType(square);
+    }
+
+    public boolean isInCheck() {
+
+        int curColor = (this.ply + Piece.BLACK) % 2;
+        int king     = Bitboard.lowestSquare(this.boards[Piece.KING] & this.boards[curColor]);
+        return this.isSquareAttacked(king, curColor ^ 1);
+    }
+
+    // Fifty move rule or a repetition since the last irreversible move, mates are left to the caller
+    public boolean isDraw() {
+
+        if (this.halfMoves >= 100)
+            return true;
+
+        // Only positions with the same side to move can repeat
+        int oldest = Math.max(0, this.historySize - this.halfMoves);
+        for (int index = this.historySize - 2; index >= oldest; index -= 2)
+            if (this.hashHistory[index] == this.hash)
+                return true;
+        return false;
+    }
+
+    // Static score in centipawns from the side to move's point of view
+    public int evaluate() {
+
+        if (this.evaluator != null)
+            return this.evaluator.evaluate(this);
+
+        int pawns = this.pawnTable != null ? this.pawnTable.probe(this.pawnHash, this.boards)
+                                           : Evaluation.pawns(this.boards);
+        pawns += Evaluation.shelter(this.boards);
+        return Evaluation.evaluate(this.score + pawns, this.boards, (this.ply + Piece.BLACK) % 2);
+    }
+
+    // Cache pawn structure scores in the table from now on, null to stop caching
+    public void setPawnTable(PawnTable pawnTable) {
+        this.pawnTable = pawnTable;
+    }
+
+    // Evaluate with the given evaluator from now on, null to go back to the handcrafted one.
+    // Each board needs its own, copies start without one.
+    public void setEvaluator(IncrementalEvaluator evaluator) {
+
+        this.evaluator = evaluator;
+        if (evaluator != null)
+            evaluator.refresh(this);
+    }
+
+    // Pieces of one color and type
+    public long getPieces(int color, int type) {
+        return this.boards[color] & this.boards[type];
+    }
+
+    // Raw boards for evaluation and testing, never to be modified
+    long[] getBoards() {
+        return this.boards;
+    }
+
+    // Zobrist keys
+    public long getHash() { return this.hash; }
+    long getPawnHash()    { return this.pawnHash; }
+
+    // Key contributions of everything but the pieces
+    private long flagsAndSideKey() {
+
+        int  toMove = (this.ply + Piece.BLACK) % 2;
+        long key    = Zobrist.FLAGS[this.keyFlags(this.flags, toMove)];
+        if (toMove == Piece.BLACK)
+            key ^= Zobrist.SIDE;
+        return key;
+    }
+
+    // Flags as the key sees them. An en passant square no pawn of the side to move can take on
+    // changes nothing, so it is left out and move orders that transpose share a key.
+    private int keyFlags(int flags, int toMove) {
+
+        int square = SpecialFlags.getEnPassantSquare(flags);
+        if (square != 0 && (Attacks.PAWNS[(toMove + 1) % 2][square] & this.boards[Piece.PAWN] & this.boards[toMove]) == 0)
+            return SpecialFlags.getCastlingRights(flags);
+        return flags;
+    }
+
+    // Compute the key from scratch, only for setup, testing and benchmarking
+    long computeHash() {
+
+        long key = this.flagsAndSideKey();
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                for (long pieces = this.boards[color] & this.boards[type]; pieces != 0; pieces = Bitboard.popLowest(pieces))
+                    key ^= Zobrist.PIECES[color][type][Bitboard.lowestSquare(pieces)];
+        return key;
+    }
+
+    // Compute the pawn key from scratch, only for testing
+    long computePawnHash() {
+
+        long key = 0L;
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (long pawns = this.boards[color] & this.boards[Piece.PAWN]; pawns != 0; pawns = Bitboard.popLowest(pawns))
+                key ^= Zobrist.PIECES[color][Piece.PAWN][Bitboard.lowestSquare(pawns)];
+        return key;
+    }
+
+    // Compute the packed score from scratch, only for testing and benchmarking
+    int computeScore() {
+        return Evaluation.compute(this.boards);
+    }
+
+    // Rook squares involved in castling, indexed by the king's destination
+    private static int castleRookFrom(int kingTo) { return (kingTo & 7) == 6 ? kingTo + 1 : kingTo - 2; }
+    private static int castleRookTo(int kingTo)   { return (kingTo & 7) == 6 ? kingTo - 1 : kingTo + 1; }
+
+    // Apply a legal move produced by generateMoves
+    public void makeMove(int move) {
+
+        int from     = Move.getFrom(move);
+        int to       = Move.getTo(move);
+        int code     = Move.getCode(move);
+        int captured = Move.getCaptured(move);
+        int curColor = (this.ply + Piece.BLACK) % 2;
+        int oppColor = (this.ply + Piece.BLACK + 1) % 2;
+        int type     = this.getType(from);
+
+        // Remember how to take it back
+        if (this.historySize == this.moveHistory.length)
+            this.reserveHistory(this.historySize + 1);
+        this.moveHistory[this.historySize]     = move;
+        this.flagHistory[this.historySize]     = this.flags;
+        this.hashHistory[this.historySize]     = this.hash;
+        this.pawnHashHistory[this.historySize] = this.pawnHash;
+        this.clockHistory[this.historySize]    = this.halfMoves;
+        this.scoreHistory[this.historySize]    = this.score;
+        this.historySize++;
+
+        // Captures and pawn moves reset the fifty move count
+        if (type == Piece.PAWN || captured != Piece.NONE)
+            this.halfMoves = 0;
+        else
+            this.halfMoves++;
+
+        // Take the old flags out of the key
+        long hash = this.hash ^ Zobrist.FLAGS[this.keyFlags(this.flags, curColor)];
+        long pawnHash = this.pawnHash;
+        int  score    = this.score;
+
+        // Remove the captured piece first, it may share a board with the mover
+        if (code == Move.EN_PASSANT) {
+            int capturedSquare = curColor == Piece.WHITE ? to - 8 : to + 8;
+            this.boards[oppColor]   ^= Bitboard.bit(capturedSquare);
+            this.boards[Piece.PAWN] ^= Bitboard.bit(capturedSquare);
+            this.mailbox[capturedSquare] = Piece.NONE;
+            hash     ^= Zobrist.PIECES[oppColor][Piece.PAWN][capturedSquare];
+            pawnHash ^= Zobrist.PIECES[oppColor][Piece.PAWN][capturedSquare];
+            score -= Evaluation.PIECE_SQUARE[oppColor][Piece.PAWN][capturedSquare];
+        } else if (captured != Piece.NONE) {
+            this.boards[oppColor] ^= Bitboard.bit(to);
+            this.boards[captured] ^= Bitboard.bit(to);
+            hash  ^= Zobrist.PIECES[oppColor][captured][to];
+            score -= Evaluation.PIECE_SQUARE[oppColor][captured][to];
+            if (captured == Piece.PAWN)
+                pawnHash ^= Zobrist.PIECES[oppColor][Piece.PAWN][to];
+        }
+
+        // Move the piece
+        long fromTo = Bitboard.bit(from) | Bitboard.bit(to);
+        this.boards[curColor] ^= fromTo;
+        this.boards[type]     ^= fromTo;
+        this.mailbox[from]     = Piece.NONE;
+        this.mailbox[to]       = (byte)type;
+        hash  ^= Zobrist.PIECES[curColor][type][from] ^ Zobrist.PIECES[curColor][type][to];
+        score += Evaluation.PIECE_SQUARE[curColor][type][to] - Evaluation.PIECE_SQUARE[curColor][type][from];
+        if (type == Piece.PAWN)
+            pawnHash ^= Zobrist.PIECES[curColor][Piece.PAWN][from] ^ Zobrist.PIECES[curColor][Piece.PAWN][to];
+
+        // Swap the pawn for its promoted piece
+        if (Move.isPromotion(move)) {
+            int promoted = Move.getPromotedPiece(move);
+            this.boards[Piece.PAWN] ^= Bitboard.bit(to);
+            this.boards[promoted]   ^= Bitboard.bit(to);
+            this.mailbox[to]         = (byte)promoted;
+            hash  ^= Zobrist.PIECES[curColor][Piece.PAWN][to] ^ Zobrist.PIECES[curColor][promoted][to];
+            score += Evaluation.PIECE_SQUARE[curColor][promoted][to] - Evaluation.PIECE_SQUARE[curColor][Piece.PAWN][to];
+            pawnHash ^= Zobrist.PIECES[curColor][Piece.PAWN][to];
+        }
+
+        // Bring the rook along when castling
+        if (Move.isCastle(move)) {
+            int rookFrom = castleRookFrom(to);
+            int rookTo   = castleRookTo(to);
+            this.boards[curColor]   ^= Bitboard.bit(rookFrom) | Bitboard.bit(rookTo);
+            this.boards[Piece.ROOK] ^= Bitboard.bit(rookFrom) | Bitboard.bit(rookTo);
+            this.mailbox[rookFrom]   = Piece.NONE;
+            this.mailbox[rookTo]     = Piece.ROOK;
+            hash  ^= Zobrist.PIECES[curColor][Piece.ROOK][rookFrom] ^ Zobrist.PIECES[curColor][Piece.ROOK][rookTo];
+            score += Evaluation.PIECE_SQUARE[curColor][Piece.ROOK][rookTo] - Evaluation.PIECE_SQUARE[curColor][Piece.ROOK][rookFrom];
+        }
+
+        // Update the flags
+        this.flags = SpecialFlags.afterMove(this.flags, from, to);
+        if (code == Move.DOUBLE_PAWN_PUSH)
+            this.flags = SpecialFlags.withEnPassant(this.flags, (from + to) / 2);
+
+        // Put the new flags and the side to move into the key
+        this.hash = hash ^ Zobrist.FLAGS[this.keyFlags(this.flags, oppColor)] ^ Zobrist.SIDE;
+        this.pawnHash = pawnHash;
+        this.score    = score;
+
+        if (this.evaluator != null)
+            this.notifyEvaluator(move, type, curColor, oppColor);
+
+        this.ply++;
+    }
+
+    // Tell the evaluator about every piece the move took away or put down
+    private void notifyEvaluator(int move, int type, int curColor, int oppColor) {
+
+        int from     = Move.getFrom(move);
+        int to       = Move.getTo(move);
+        int captured = Move.getCaptured(move);
+
+        this.evaluator.push();
+
+        if (Move.getCode(move) == Move.EN_PASSANT)
+            this.evaluator.remove(curColor == Piece.WHITE ? to - 8 : to + 8, Piece.PAWN, oppColor);
+        else if (captured != Piece.NONE)
+            this.evaluator.remove(to, captured, oppColor);
+
+        this.evaluator.remove(from, type, curColor);
+        this.evaluator.add(to, Move.isPromotion(move) ? Move.getPromotedPiece(move) : type, curColor);
+
+        if (Move.isCastle(move)) {
+            this.evaluator.remove(castleRookFrom(to), Piece.ROOK, curColor);
+            this.evaluator.add(castleRookTo(to), Piece.ROOK, curColor);
+        }
+    }
+
+    // Take back the last move made
+    public void unmakeMove() {
+
+        this.historySize--;
+        this.ply--;
+
+        if (this.evaluator != null)
+            this.evaluator.pop();
+
+        int move     = this.moveHistory[this.historySize];
+        int from     = Move.getFrom(move);
+        int to       = Move.getTo(move);
+        int code     = Move.getCode(move);
+        int captured = Move.getCaptured(move);
+        int curColor = (this.ply + Piece.BLACK) % 2;
+        int oppColor = (this.ply + Piece.BLACK + 1) % 2;
+
+        this.flags     = this.flagHistory[this.historySize];
+        this.hash      = this.hashHistory[this.historySize];
+        this.pawnHash  = this.pawnHashHistory[this.historySize];
+        this.halfMoves = this.clockHistory[this.historySize];
+        this.score     = this.scoreHistory[this.historySize];
+
+        // Put the rook back
+        if (Move.isCastle(move)) {
+            int rookFrom = castleRookFrom(to);
+            int rookTo   = castleRookTo(to);
+            this.boards[curColor]   ^= Bitboard.bit(rookFrom) | Bitboard.bit(rookTo);
+            this.boards[Piece.ROOK] ^= Bitboard.bit(rookFrom) | Bitboard.bit(rookTo);
+            this.mailbox[rookFrom]   = Piece.ROOK;
+            this.mailbox[rookTo]     = Piece.NONE;
+        }
+
+        // Turn the promoted piece back into a pawn
+        if (Move.isPromotion(move)) {
+            this.boards[Move.getPromotedPiece(move)] ^= Bitboard.bit(to);
+            this.boards[Piece.PAWN]                  ^= Bitboard.bit(to);
+            this.mailbox[to]                          = Piece.PAWN;
+        }
+
+        // Move the piece back
+        long fromTo = Bitboard.bit(from) | Bitboard.bit(to);
+        int  type   = this.getType(to);
+        this.boards[curColor] ^= fromTo;
+        this.boards[type]     ^= fromTo;
+        this.mailbox[from]     = (byte)type;
+        this.mailbox[to]       = Piece.NONE;
+
+        // Restore the captured piece
+        if (code == Move.EN_PASSANT) {
+            int capturedSquare = curColor == Piece.WHITE ? to - 8 : to + 8;
+            this.boards[oppColor]   ^= Bitboard.bit(capturedSquare);
+            this.boards[Piece.PAWN] ^= Bitboard.bit(capturedSquare);
+            this.mailbox[capturedSquare] = Piece.PAWN;
+        } else if (captured != Piece.NONE) {
+            this.boards[oppColor] ^= Bitboard.bit(to);
+            this.boards[captured] ^= Bitboard.bit(to);
+            this.mailbox[to]       = (byte)captured;
+        }
+    }
+
+    // FEN piece letters, indexed by piece type
+    private static final char[] SYMBOLS = {' ', ' ', 'k', 'n', 'r', 'b', 'q', 'p'};
+
+    private static int typeOfSymbol(char symbol) {
+
+        for (int type = Piece.KING; type <= Piece.PAWN; type++)
+            if (SYMBOLS[type] == Character.toLowerCase(symbol))
+                return type;
+        return Piece.NONE;
+    }
+
+    private static int skipSpaces(CharSequence text, int index) {
+
+        while (index < text.length() && text.charAt(index) == ' ')
+            index++;
+        return index;
+    }
+
+    // Squares among the king and rook homes holding the piece castling needs there
+    private static long castlingHomes(long[] boards) {
+
+        long white = boards[Piece.WHITE];
+        long black = boards[Piece.BLACK];
+        return boards[Piece.KING] & (white & 0x10L | black & 0x10L << 56)
+             | boards[Piece.ROOK] & (white & 0x81L | black & 0x81L << 56);
+    }
+
+    // An en passant target on the right rank is only real if it is empty with the pawn that
+    // just moved two squares right in front of it
+    private static boolean isEnPassantPossible(long[] boards, int target, int toMove) {
+
+        int pawn = toMove == Piece.WHITE ? target - 8 : target + 8;
+        return ((boards[Piece.BLACK] | boards[Piece.WHITE]) & Bitboard.bit(target)) == 0
+            && (boards[Piece.PAWN] & boards[(toMove + 1) % 2] & Bitboard.bit(pawn)) != 0;
+    }
+
+    private static IllegalArgumentException badFen(CharSequence fen, String problem) {
+        return new IllegalArgumentException("FEN " + fen + " " + problem + ".");
+    }
+
+    // Load a position from Forsyth-Edwards Notation, see loadFen(CharSequence, int)
+    public void loadFen(CharSequence fen) {
+        this.loadFen(fen, 0);
+    }
+
+    // Reload this board in place from the FEN starting at an index, without allocating.
+    // The move counters are optional. Returns the index just past the last field read,
+    // so callers can parse whatever follows, such as EPD operations.
+    public int loadFen(CharSequence fen, int start) {
+
+        int length = fen.length();
+        int index  = skipSpaces(fen, start);
+
+        // Start from an empty board
+        Arrays.fill(this.boards, 0L);
+        Arrays.fill(this.mailbox, (byte)Piece.NONE);
+        this.hash        = 0L;
+        this.pawnHash    = 0L;
+        this.score       = 0;
+        this.historySize = 0;
+
+        // Piece placement, from the eighth rank down
+        int file = 0;
+        int rank = 7;
+        for (; index < length && fen.charAt(index) != ' '; index++) {
+
+            char symbol = fen.charAt(index);
+            if (symbol == '/') {
+                if (file != 8 || rank == 0)
+                    throw badFen(fen, "has a malformed rank");
+                file = 0;
+                rank--;
+            } else if ('1' <= symbol && symbol <= '8')
+                file += symbol - '0';
+            else {
+                int type = typeOfSymbol(symbol);
+                if (type == Piece.NONE || file > 7 || type == Piece.PAWN && (rank == 0 || rank == 7))
+                    throw badFen(fen, "has a bad piece placement");
+                this.setBit(rank * 8 + file, type, Character.isUpperCase(symbol) ? Piece.WHITE : Piece.BLACK, true);
+                file++;
+            }
+
+            if (file > 8)
+                throw badFen(fen, "has a rank longer than eight squares");
+        }
+        if (file != 8 || rank != 0)
+            throw badFen(fen, "doesn't cover all 64 squares");
+        if (Bitboard.count(this.boards[Piece.KING] & this.boards[Piece.WHITE]) != 1 ||
+            Bitboard.count(this.boards[Piece.KING] & this.boards[Piece.BLACK]) != 1)
+            throw badFen(fen, "needs exactly one king per side");
+
+        // Side to move, white moves on odd plies
+        index = skipSpaces(fen, index);
+        if (index >= length || (fen.charAt(index) != 'w' && fen.charAt(index) != 'b'))
+            throw badFen(fen, "has an unknown side to move");
+        boolean isWhite = fen.charAt(index++) == 'w';
+
+        // The side that just moved cannot have left its king in check
+        int toMove = isWhite ? Piece.WHITE : Piece.BLACK;
+        if (this.isSquareAttacked(Bitboard.lowestSquare(this.boards[Piece.KING] & this.boards[(toMove + 1) % 2]), toMove))
+            throw badFen(fen, "has the side not to move in check");
+
+        // Castling rights
+        index = skipSpaces(fen, index);
+        this.flags = 0;
+        for (; index < length && fen.charAt(index) != ' '; index++)
+            switch (fen.charAt(index)) {
+                case 'K': this.flags = SpecialFlags.withCastle(this.flags, SpecialFlags.WHITE_SHORT); break;
+                case 'Q': this.flags = SpecialFlags.withCastle(this.flags, SpecialFlags.WHITE_LONG);  break;
+                case 'k': this.flags = SpecialFlags.withCastle(this.flags, SpecialFlags.BLACK_SHORT); break;
+                case 'q': this.flags = SpecialFlags.withCastle(this.flags, SpecialFlags.BLACK_LONG);  break;
+                case '-': break;
+                default:  throw badFen(fen, "has unknown castling rights");
+            }
+        this.flags = SpecialFlags.withPiecesHome(this.flags, castlingHomes(this.boards));
+
+        // En passant
+        index = skipSpaces(fen, index);
+        if (index < length && fen.charAt(index) == '-')
+            index++;
+        else if (index + 1 < length && 'a' <= fen.charAt(index) && fen.charAt(index) <= 'h' &&
+                 fen.charAt(index + 1) == (isWhite ? '6' : '3')) {
+            int target = Bitboard.indexFromFileRank(Character.toUpperCase(fen.charAt(index)), isWhite ? 6 : 3);
+            if (!isEnPassantPossible(this.boards, target, toMove))
+                throw badFen(fen, "has an en passant square with no pawn that just moved");
+            this.flags = SpecialFlags.withEnPassant(this.flags, target);
+            index += 2;
+        } else
+            throw badFen(fen, "has a bad en passant square");
+
+        // Optional move counters
+        this.halfMoves = 0;
+        int fullMoves  = 1;
+        int next       = skipSpaces(fen, index);
+        if (next < length && Character.isDigit(fen.charAt(next))) {
+            for (this.halfMoves = 0; next < length && Character.isDigit(fen.charAt(next)); next++)
+                this.halfMoves = 10 * this.halfMoves + fen.charAt(next) - '0';
+            index = next;
+
+            next = skipSpaces(fen, index);
+            if (next < length && Character.isDigit(fen.charAt(next))) {
+                for (fullMoves = 0; next < length && Character.isDigit(fen.charAt(next)); next++)
+                    fullMoves = 10 * fullMoves + fen.charAt(next) - '0';
+                index = next;
+            }
+        }
+        this.ply = 2 * (Math.max(1, fullMoves) - 1) + (isWhite ? 1 : 2);
+
+        // The pieces are already in the key, add the rest
+        this.hash ^= this.flagsAndSideKey();
+
+        if (this.evaluator != null)
+            this.evaluator.refresh(this);
+        return index;
+    }
+
+    // Append the position in Forsyth-Edwards Notation
+    public void toFen(StringBuilder output) {
+
+        // Piece placement, from the eighth rank down
+        for (int rank = 7; rank >= 0; rank--) {
+
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+
+                int square = rank * 8 + file;
+                int type   = this.getType(square);
+                if (type == Piece.NONE) {
+                    empty++;
+                    continue;
+                }
+
+                if (empty > 0)
+                    output.append(empty);
+                empty = 0;
+
+                char symbol = SYMBOLS[type];
+                output.append(this.getColor(square) == Piece.WHITE ? Character.toUpperCase(symbol) : symbol);
+            }
+
+            if (empty > 0)
+                output.append(empty);
+            if (rank > 0)
+                output.append('/');
+        }
+
+        // Side to move
+        boolean isWhite = (this.ply + Piece.BLACK) % 2 == Piece.WHITE;
+        output.append(isWhite ? " w " : " b ");
+
+        // Castling rights
+        if (SpecialFlags.getCastlingRights(this.flags) == 0)
+            output.append('-');
+        if (SpecialFlags.canCastle(this.flags, SpecialFlags.WHITE_SHORT))
+            output.append('K');
+        if (SpecialFlags.canCastle(this.flags, SpecialFlags.WHITE_LONG))
+            output.append('Q');
+        if (SpecialFlags.canCastle(this.flags, SpecialFlags.BLACK_SHORT))
+            output.append('k');
+        if (SpecialFlags.canCastle(this.flags, SpecialFlags.BLACK_LONG))
+            output.append('q');
+
+        // En passant
+        output.append(' ');
+        int square = SpecialFlags.getEnPassantSquare(this.flags);
+        if (square == 0)
+            output.append('-');
+        else {
+            output.append(Character.toLowerCase(Bitboard.fileOf(square)));
+            output.append(Bitboard.rankOf(square));
+        }
+
+        // Move counters
+        output.append(' ');
+        output.append(this.halfMoves);
+        output.append(' ');
+        output.append((this.ply + 1) / 2);
+    }
+
+    public String toFen() {
+
+        StringBuilder output = new StringBuilder();
+        this.toFen(output);
+        return output.toString();
+    }
+
+    // Size in bytes of a binary position record, fixed so records can be indexed in a file
+    public static final int RECORD_SIZE = 9 * Long.BYTES;
+
+    // Write the position as a binary record, in the buffer's byte order:
+    //   8 longs : the boards, black and white first, then each piece type
+    //   1 long  : the flags in bits 0-15, the fifty move clock in bits 16-31, the ply above
+    // Like a FEN, the record leaves out the moves that led to the position.
+    public void toRecord(ByteBuffer buffer) {
+
+        for (long board : this.boards)
+            buffer.putLong(board);
+        buffer.putLong((long)this.ply << 32 | (long)this.halfMoves << 16 | this.flags);
+    }
+
+    // Reload this board in place from a record written by toRecord, without allocating. A
+    // record that could not come from a legal position is refused and the board left as it was.
+    public void loadRecord(ByteBuffer buffer) {
+
+        long[] boards = this.recordBoards;
+        for (int index = 0; index < boards.length; index++)
+            boards[index] = buffer.getLong();
+        long counters  = buffer.getLong();
+        int  flags     = (int)(counters & 0xFFFF);
+        int  halfMoves = (int)(counters >>> 16 & 0xFFFF);
+        int  ply       = (int)(counters >>> 32);
+
+        // Enough checking that a corrupt record cannot break the tables indexed later
+        long occupancy = boards[Piece.BLACK] | boards[Piece.WHITE];
+        long pieces    = 0L;
+        int  count     = 0;
+        for (int type = Piece.KING; type <= Piece.PAWN; type++) {
+            pieces |= boards[type];
+            count  += Bitboard.count(boards[type]);
+        }
+        if ((boards[Piece.BLACK] & boards[Piece.WHITE]) != 0 || pieces != occupancy
+                || count != Bitboard.count(occupancy))
+            throw new IllegalArgumentException("Position record has overlapping boards.");
+        if (Bitboard.count(boards[Piece.KING] & boards[Piece.WHITE]) != 1 ||
+            Bitboard.count(boards[Piece.KING] & boards[Piece.BLACK]) != 1)
+            throw new IllegalArgumentException("Position record needs exactly one king per side.");
+        if (flags >= SpecialFlags.SIZE || ply < 1)
+            throw new IllegalArgumentException("Position record has bad flags or ply.");
+
+        // An en passant square lies right behind a pawn of the side that just moved, on its third
+        // rank, or a capture there would take a pawn that is not on the board
+        int toMove = (ply + Piece.BLACK) % 2;
+        int other  = (toMove + 1) % 2;
+        int target = SpecialFlags.getEnPassantSquare(flags);
+        if (target != 0 && (Bitboard.rankOf(target) != (toMove == Piece.WHITE ? 6 : 3)
+                || !isEnPassantPossible(boards, target, toMove)))
+            throw new IllegalArgumentException("Position record has a bad en passant square.");
+
+        // Castling needs the king and rook still home, or the castle would move pieces that are not there
+        if (SpecialFlags.withPiecesHome(flags, castlingHomes(boards)) != flags)
+            throw new IllegalArgumentException("Position record has castling rights without their pieces.");
+
+        // The side that just moved cannot have left its king in check
+        if (isAttacked(boards, Bitboard.lowestSquare(boards[Piece.KING] & boards[other]), toMove, occupancy))
+            throw new IllegalArgumentException("Position record has the side not to move in check.");
+
+        System.arraycopy(boards, 0, this.boards, 0, boards.length);
+        this.flags     = flags;
+        this.halfMoves = halfMoves;
+        this.ply       = ply;
+
+        // Everything derived from the boards
+        Arrays.fill(this.mailbox, (byte)Piece.NONE);
+        this.hash        = this.flagsAndSideKey();
+        this.pawnHash    = 0L;
+        this.score       = 0;
+        this.historySize = 0;
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                for (long bits = this.boards[color] & this.boards[type]; bits != 0; bits = Bitboard.popLowest(bits)) {
+                    int square = Bitboard.lowestSquare(bits);
+                    this.mailbox[square] = (byte)type;
+                    this.hash           ^= Zobrist.PIECES[color][type][square];
+                    this.score          += Evaluation.PIECE_SQUARE[color][type][square];
+                    if (type == Piece.PAWN)
+                        this.pawnHash ^= Zobrist.PIECES[color][type][square];
+                }
+
+        if (this.evaluator != null)
+            this.evaluator.refresh(this);
     }
 
     // Load starting chess position
@@ -130,7 +1195,106 @@ class Chessboard {
         this.setBit('H', 8, Piece.ROOK,   Piece.BLACK, true);
 
         // Load the starting flags
-        this.flags = new SpecialFlags();
+        this.flags = SpecialFlags.ALL_CASTLES;
+
+        // White moves on odd plies
+        this.ply = 1;
+
+        // The pieces are already in the key, add the rest
+        this.hash ^= this.flagsAndSideKey();
+    }
+
+    // Find the legal move written in Standard Algebraic Notation, as in Nbd7, exd6, e8=Q+ or O-O,
+    // or in long algebraic notation. Returns NONE when no single legal move matches.
+    public int parseSan(CharSequence san) {
+
+        // Check marks and annotations say nothing about the move
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0)
+            end--;
+        String text = san.subSequence(0, end).toString().replace('0', 'O');
+
+        int[] moves = new int[MAX_MOVES];
+        int   count = this.generateMoves(moves);
+        for (int i = 0; i < count; i++)
+            if (Move.toString(moves[i]).equals(text))
+                return moves[i];
+
+        // Castling goes by the side the king heads for
+        if (text.equals("O-O") || text.equals("O-O-O")) {
+            char file = text.length() == 3 ? 'G' : 'C';
+            for (int i = 0; i < count; i++)
+                if (Move.isCastle(moves[i]) && Bitboard.fileOf(Move.getTo(moves[i])) == file)
+                    return moves[i];
+            return Move.NONE;
+        }
+
+        // Piece letter, pawns having none
+        int index = 0;
+        int type  = Piece.PAWN;
+        if (!text.isEmpty() && "KQRBN".indexOf(text.charAt(0)) >= 0)
+            type = typeOfSymbol(text.charAt(index++));
+
+        // Promotion, with or without the equals sign
+        int promoted = Piece.NONE;
+        if (end - index > 2 && "QRBN".indexOf(text.charAt(text.length() - 1)) >= 0) {
+            promoted = typeOfSymbol(text.charAt(text.length() - 1));
+            text     = text.substring(0, text.length() - (text.charAt(text.length() - 2) == '=' ? 2 : 1));
+        }
+
+        // Destination last, whatever disambiguates before it
+        String body = text.substring(index).replace("x", "").replace("-", "");
+        if (body.length() < 2 || body.length() > 4)
+            return Move.NONE;
+        char toFile = Character.toUpperCase(body.charAt(body.length() - 2));
+        int  toRank = body.charAt(body.length() - 1) - '0';
+        if (!Bitboard.isFileRankInBounds(toFile, toRank))
+            return Move.NONE;
+        int  to       = Bitboard.indexFromFileRank(toFile, toRank);
+        char fromFile = ' ';
+        int  fromRank = 0;
+        for (int i = 0; i < body.length() - 2; i++) {
+            char symbol = body.charAt(i);
+            if ('a' <= symbol && symbol <= 'h')
+                fromFile = Character.toUpperCase(symbol);
+            else if ('1' <= symbol && symbol <= '8')
+                fromRank = symbol - '0';
+            else
+                return Move.NONE;
+        }
+
+        int found = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Move.getFrom(move);
+            if (Move.getTo(move) != to || this.getType(from) != type || Move.isCastle(move)
+                    || (fromFile != ' ' && Bitboard.fileOf(from) != fromFile)
+                    || (fromRank != 0 && Bitboard.rankOf(from) != fromRank)
+                    || Move.isPromotion(move) != (promoted != Piece.NONE)
+                    || (promoted != Piece.NONE && Move.getPromotedPiece(move) != promoted))
+                continue;
+            if (found != Move.NONE)
+                return Move.NONE;
+            found = move;
+        }
+        return found;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof Chessboard) {
+            Chessboard other = (Chessboard)obj;
+            return this.hash == other.hash
+                && Arrays.equals(this.boards, other.boards)
+                && this.flags == other.flags
+                && this.ply % 2 == other.ply % 2;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(this.hash ^ this.hash >>> 32);
     }
 
     @Override
@@ -155,8 +1319,9 @@ class Chessboard {
         for (int rank = 8; rank >= 1; rank--) {
             for (char file = 'A'; file <= 'H'; file++) {
 
-                int color = this.getColor(file, rank);
-                int type  = this.getType(file, rank);
+                int square = Bitboard.indexFromFileRank(file, rank);
+                int color  = this.getColor(square);
+                int type   = this.getType(square);
 
                 if (color != Piece.NONE && type != Piece.NONE) {
                     output.append(" ");
@@ -181,11 +1346,314 @@ class Chessboard {
         return output.toString();
     }
 
+    // Legal move by its long algebraic name, NONE if there is none
+    private static int findMove(Chessboard board, String name) {
+
+        int[] moves = new int[MAX_MOVES];
+        int   count = board.generateMoves(moves);
+        for (int i = 0; i < count; i++)
+            if (Move.toString(moves[i]).equals(name))
+                return moves[i];
+        return Move.NONE;
+    }
+
     // Unit testing
     public static void main(String[] args) {
 
         // Create instance
         Chessboard cBoard = new Chessboard();
         System.out.println(cBoard);
+
+        // Twenty moves from the start
+        int[] moves = new int[MAX_MOVES];
+        if (cBoard.generateMoves(moves) != 20)
+            throw new UnitTestException("Move generation from the start is bad.");
+
+        // Open the e-file and check the white king with a black queen on E5
+        cBoard.setBit('E', 2, Piece.PAWN,  Piece.WHITE, false);
+        cBoard.setBit('E', 7, Piece.PAWN,  Piece.BLACK, false);
+        cBoard.setBit('D', 8, Piece.QUEEN, Piece.BLACK, false);
+        cBoard.setBit('E', 5, Piece.QUEEN, Piece.BLACK, true);
+
+        // Only the bishop, queen and knight blocks on E2 remain
+        int count = cBoard.generateMoves(moves);
+        if (count != 3)
+            throw new UnitTestException("Check evasion is bad.");
+        for (int i = 0; i < count; i++)
+            if (Move.getTo(moves[i]) != Bitboard.indexFromFileRank('E', 2))
+                throw new UnitTestException("Check evasion is bad.");
+
+        // Block with the knight, which is then pinned and can't move
+        cBoard.setBit('G', 1, Piece.KNIGHT, Piece.WHITE, false);
+        cBoard.setBit('E', 2, Piece.KNIGHT, Piece.WHITE, true);
+        count = cBoard.generateMoves(moves);
+        for (int i = 0; i < count; i++)
+            if (Move.getFrom(moves[i]) == Bitboard.indexFromFileRank('E', 2))
+                throw new UnitTestException("Pinned piece moved.");
+
+        // Clearing F1 opens up short castling
+        cBoard.setBit('F', 1, Piece.BISHOP, Piece.WHITE, false);
+        count = cBoard.generateMoves(moves);
+        boolean hasCastle = false;
+        for (int i = 0; i < count; i++)
+            hasCastle |= Move.getCode(moves[i]) == Move.KING_CASTLE;
+        if (!hasCastle)
+            throw new UnitTestException("Castling is bad.");
+
+        // Making and unmaking every move leaves the board untouched
+        long[] before = cBoard.boards.clone();
+        for (int i = 0; i < count; i++) {
+            cBoard.makeMove(moves[i]);
+            cBoard.unmakeMove();
+            if (!Arrays.equals(before, cBoard.boards) || cBoard.ply != 1)
+                throw new UnitTestException("Make and unmake disagree on " + Move.toString(moves[i]));
+        }
+
+        // Castle and check the rook came along
+        for (int i = 0; i < count; i++)
+            if (Move.getCode(moves[i]) == Move.KING_CASTLE)
+                cBoard.makeMove(moves[i]);
+        if (cBoard.getType(Bitboard.indexFromFileRank('F', 1)) != Piece.ROOK ||
+            cBoard.getType(Bitboard.indexFromFileRank('G', 1)) != Piece.KING)
+            throw new UnitTestException("Castling is bad.");
+        if (SpecialFlags.getCastlingRights(cBoard.flags) != (SpecialFlags.BLACK_SHORT | SpecialFlags.BLACK_LONG))
+            throw new UnitTestException("Castling rights are bad.");
+
+        // Knights out and back transpose to the starting key
+        cBoard = new Chessboard();
+        long start = cBoard.getHash();
+        if (start != cBoard.computeHash())
+            throw new UnitTestException("Starting hash is bad.");
+        if (cBoard.evaluate() != 0 || fromFen("4k3/8/8/8/8/8/8/3QK3 b - - 0 1").evaluate() >= 0)
+            throw new UnitTestException("Evaluation is bad.");
+
+        String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (String name : shuffle) {
+            count = cBoard.generateMoves(moves);
+            for (int i = 0; i < count; i++)
+                if (Move.toString(moves[i]).equals(name))
+                    cBoard.makeMove(moves[i]);
+        }
+        if (cBoard.getHash() != start || !cBoard.equals(new Chessboard()))
+            throw new UnitTestException("Transposed hash is bad.");
+
+        // Which is also a repetition, unlike the fresh board
+        if (!cBoard.isDraw() || new Chessboard().isDraw() || cBoard.isInCheck())
+            throw new UnitTestException("Repetition is bad.");
+
+        // Pawns attack forward only, sliders stop at the first blocker
+        cBoard = fromFen("4k3/8/8/3p4/8/8/1B6/R3K3 w - - 0 1");
+        if (!cBoard.isSquareAttacked(Bitboard.indexFromFileRank('E', 4), Piece.BLACK)
+                || cBoard.isSquareAttacked(Bitboard.indexFromFileRank('D', 6), Piece.BLACK)
+                || !cBoard.isSquareAttacked(Bitboard.indexFromFileRank('A', 8), Piece.WHITE)
+                || !cBoard.isSquareAttacked(Bitboard.indexFromFileRank('D', 4), Piece.WHITE)
+                || cBoard.isSquareAttacked(Bitboard.indexFromFileRank('F', 7), Piece.WHITE))
+            throw new UnitTestException("Square attacks are bad.");
+
+        // Exchanges: a free pawn, a losing knight trade down a defended file, en passant,
+        // a promotion, and a queen stepping onto a square a pawn guards
+        String[][] exchanges = {
+            {"1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1",              "e1e5", "100"},
+            {"1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1",     "d3e5", "-200"},
+            {"4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1",                            "e5d6", "100"},
+            {"4k3/P7/8/8/8/8/8/4K3 w - - 0 1",                               "a7a8q", "800"},
+            {"4k3/8/8/3p4/8/8/8/4K2Q w - - 0 1",                             "h1e4", "-900"},
+        };
+        for (String[] exchange : exchanges) {
+            cBoard = fromFen(exchange[0]);
+            int move      = findMove(cBoard, exchange[1]);
+            int threshold = Integer.parseInt(exchange[2]);
+            if (move == Move.NONE || !cBoard.see(move, threshold) || cBoard.see(move, threshold + 1))
+                throw new UnitTestException("Exchange is bad: " + exchange[1] + " in " + exchange[0]);
+        }
+
+        // FEN round trips, in place
+        String[] fens = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 b - - 17 42",
+        };
+        StringBuilder output = new StringBuilder();
+        for (String fen : fens) {
+            cBoard.loadFen(fen);
+            output.setLength(0);
+            cBoard.toFen(output);
+            if (!output.toString().equals(fen) || cBoard.getHash() != cBoard.computeHash())
+                throw new UnitTestException("FEN round trip is bad: " + output);
+        }
+
+        // Counters default, trailing operations are left for the caller
+        String epd = "4k3/8/8/8/8/8/8/4K3 b - - bm Kd2;";
+        if (cBoard.loadFen(epd, 0) != epd.indexOf(" bm") || !cBoard.toFen().equals("4k3/8/8/8/8/8/8/4K3 b - - 0 1"))
+            throw new UnitTestException("EPD style FEN is bad.");
+
+        // Games longer than the initial undo stack grow it, copies included, and still unwind
+        cBoard.loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        for (int made = 0; made < 3 * INITIAL_HISTORY; made++)
+            cBoard.makeMove(cBoard.parseSan(shuffle[made % shuffle.length]));
+        Chessboard longGame = new Chessboard(cBoard);
+        longGame.makeMove(longGame.parseSan("e4"));
+        for (int made = 0; made <= 3 * INITIAL_HISTORY; made++)
+            longGame.unmakeMove();
+        if (!longGame.equals(new Chessboard()) || !cBoard.isDraw())
+            throw new UnitTestException("Long game history is bad.");
+
+        // Transpositions share a key when the en passant square cannot be taken on, not when it can
+        String[][] orders = {
+            {"e4", "e6", "d4"}, {"d4", "e6", "e4"},
+            {"e4", "Nc6", "e5", "f5"}, {"e4", "f5", "e5", "Nc6"},
+        };
+        long[] keys = new long[orders.length];
+        for (int order = 0; order < orders.length; order++) {
+            cBoard.loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+            for (String san : orders[order])
+                cBoard.makeMove(cBoard.parseSan(san));
+            keys[order] = cBoard.getHash();
+            if (keys[order] != cBoard.computeHash() || keys[order] != fromFen(cBoard.toFen()).getHash())
+                throw new UnitTestException("En passant key is bad at " + cBoard.toFen());
+        }
+        if (keys[0] != keys[1] || keys[2] == keys[3])
+            throw new UnitTestException("Transposition keys are bad.");
+
+        // Standard algebraic notation, with captures, castling, promotions and disambiguation
+        String[][] sans = {
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",              "e4",     "e2e4"},
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",              "Nf3!",   "g1f3"},
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",              "g1f3",   "g1f3"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "O-O",    "e1g1"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "0-0-0",  "e1c1"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "Nxd7",   "e5d7"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "gxh3",   "g2h3"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "Bxa6",   "e2a6"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "Nb1",    "c3b1"},
+            {"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",        "exf6",   "e5f6"},
+            {"R7/8/8/8/8/8/8/R3K2k w - - 0 1",                                        "R1a4",   "a1a4"},
+            {"R7/8/8/8/8/8/8/R3K2k w - - 0 1",                                        "R8xa4+", "a8a4"},
+            {"R7/8/8/8/8/8/8/R3K2k w - - 0 1",                                        "Ra4",    null},
+            {"8/P6k/8/8/8/8/8/K7 w - - 0 1",                                          "a8=Q",   "a7a8q"},
+            {"8/P6k/8/8/8/8/8/K7 w - - 0 1",                                          "a8N+",   "a7a8n"},
+            {"8/P6k/8/8/8/8/8/K7 w - - 0 1",                                          "a8",     null},
+            {"8/P6k/8/8/8/8/8/K7 w - - 0 1",                                          "Kb3",    null},
+            {"8/P6k/8/8/8/8/8/K7 w - - 0 1",                                          "Qz9",    null},
+        };
+        for (String[] san : sans) {
+            cBoard.loadFen(san[0]);
+            int move = cBoard.parseSan(san[1]);
+            if (san[2] == null ? move != Move.NONE : move == Move.NONE || !Move.toString(move).equals(san[2]))
+                throw new UnitTestException("SAN " + san[1] + " is bad at " + san[0]);
+        }
+
+        // Bad input is rejected
+        String[] bad = {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1", "8/8/8/8/8/8/8/8 w - - 0 1",
+                        "4k3/8/8/8/8/8/8/4K3 x - - 0 1", "4k3/8/8/8/8/8/8/4K3 w - e4 0 1",
+                        "4k3/4R3/8/8/8/8/8/4K3 w - - 0 1", "4k3/8/8/3P4/8/8/8/4K3 w - e6 0 1",
+                        "4k3/8/3n4/3pP3/8/8/8/4K3 w - d6 0 1", "P3k3/8/8/8/8/8/8/4K3 w - - 0 1",
+                        "4k3/8/8/8/8/8/8/p3K3 b - - 0 1"};
+        for (String fen : bad) {
+            boolean isRejected = false;
+            try {
+                cBoard.loadFen(fen);
+            } catch (IllegalArgumentException exception) {
+                isRejected = true;
+            }
+            if (!isRejected)
+                throw new UnitTestException("Bad FEN accepted: " + fen);
+        }
+        if (!fromFen("4k3/4R3/8/8/8/8/8/4K3 b - - 0 1").isInCheck())
+            throw new UnitTestException("Side to move in check is bad.");
+
+        // Castling rights go with a king or rook that is not home, so no castle moves an absent piece
+        cBoard = fromFen("4k3/8/8/8/8/8/4K3/7R w K - 0 1");
+        count  = cBoard.generateMoves(moves);
+        for (int i = 0; i < count; i++)
+            if (Move.isCastle(moves[i]))
+                throw new UnitTestException("Castle without the king home: " + Move.toString(moves[i]));
+        if (!cBoard.toFen().startsWith("4k3/8/8/8/8/8/4K3/7R w - -") ||
+            !fromFen("r3k3/8/8/8/8/8/8/4K2R w KQkq - 0 1").toFen().startsWith("r3k3/8/8/8/8/8/8/4K2R w Kq -"))
+            throw new UnitTestException("Castling rights without their pieces are kept.");
+
+        // The fifty move count follows quiet moves and resets on pawn moves
+        cBoard = fromFen(fens[0]);
+        String[] opening = {"g1f3", "g8f6", "e2e4"};
+        for (String name : opening) {
+            count = cBoard.generateMoves(moves);
+            for (int i = 0; i < count; i++)
+                if (Move.toString(moves[i]).equals(name))
+                    cBoard.makeMove(moves[i]);
+        }
+        if (!cBoard.toFen().equals("rnbqkb1r/pppppppp/5n2/8/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq e3 0 2"))
+            throw new UnitTestException("Move counters are bad: " + cBoard.toFen());
+        cBoard.unmakeMove();
+        if (!cBoard.toFen().endsWith(" 2 2"))
+            throw new UnitTestException("Move counters are bad: " + cBoard.toFen());
+        cBoard = new Chessboard();
+
+        // Random games keep the incremental key equal to a recomputed one, and unwind cleanly
+        Random random = new Random(7);
+        int[]  split  = new int[MAX_MOVES];
+        int    stale  = Move.NONE;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        Chessboard loaded = new Chessboard();
+        for (int game = 0; game < 50; game++) {
+            int made = 0;
+            for (; made < 200; made++) {
+                count = cBoard.generateMoves(moves);
+
+                // Noisy then quiet generation gives the same moves, and every one of them is legal
+                int noisy = cBoard.generateNoisy(split, 0);
+                int total = cBoard.generateQuiets(split, noisy);
+                Arrays.sort(split, 0, total);
+                int[] sorted = Arrays.copyOf(moves, count);
+                Arrays.sort(sorted);
+                if (!Arrays.equals(sorted, Arrays.copyOf(split, total)))
+                    throw new UnitTestException("Split generation is bad at " + cBoard.toFen());
+                for (int i = 0; i < count; i++)
+                    if (!cBoard.isLegal(moves[i]))
+                        throw new UnitTestException("Legal move refused at " + cBoard.toFen());
+                if (cBoard.isLegal(stale) != (Arrays.binarySearch(sorted, stale) >= 0))
+                    throw new UnitTestException("Stale move is bad at " + cBoard.toFen());
+
+                if (count == 0)
+                    break;
+                stale = moves[random.nextInt(count)];
+                cBoard.makeMove(moves[random.nextInt(count)]);
+                if (cBoard.getHash() != cBoard.computeHash())
+                    throw new UnitTestException("Incremental hash is bad.");
+                if (cBoard.score != cBoard.computeScore())
+                    throw new UnitTestException("Incremental score is bad.");
+                if (cBoard.pawnHash != cBoard.computePawnHash())
+                    throw new UnitTestException("Incremental pawn hash is bad.");
+
+                // The mailbox agrees with the boards on every square
+                for (int square = 0; square < 64; square++) {
+                    int type = Piece.NONE;
+                    for (int candidate = Piece.KING; candidate <= Piece.PAWN; candidate++)
+                        if ((cBoard.boards[candidate] & Bitboard.bit(square)) != 0)
+                            type = candidate;
+                    if (cBoard.getType(square) != type)
+                        throw new UnitTestException("Mailbox is bad at " + cBoard.toFen());
+                }
+
+                // A binary record brings back the position and everything derived from it
+                cBoard.toRecord(record.clear());
+                loaded.loadRecord(record.flip());
+                if (!loaded.equals(cBoard) || !loaded.toFen().equals(cBoard.toFen()) || loaded.score != cBoard.score
+                        || loaded.pawnHash != cBoard.pawnHash || !Arrays.equals(loaded.mailbox, cBoard.mailbox))
+                    throw new UnitTestException("Record is bad at " + cBoard.toFen());
+
+                // The one-color test agrees with the full attacker set on every square
+                long occupancy = cBoard.boards[Piece.WHITE] | cBoard.boards[Piece.BLACK];
+                for (int square = 0; square < 64; square++)
+                    for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+                        if (cBoard.isSquareAttacked(square, color)
+                                != ((cBoard.attackersTo(square, occupancy) & cBoard.boards[color]) != 0))
+                            throw new UnitTestException("Square attacks are bad at " + cBoard.toFen());
+            }
+            for (; made > 0; made--)
+                cBoard.unmakeMove();
+            if (cBoard.getHash() != start || cBoard.score != cBoard.computeScore())
+                throw new UnitTestException("Unmade hash is bad.");
+        }
     }
 }
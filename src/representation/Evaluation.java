@@ -0,0 +1,346 @@
+package representation;
+
+class Evaluation {
+
+    // https://www.chessprogramming.org/Tapered_Eval
+    // https://www.chessprogramming.org/PeSTO%27s_Evaluation_Function
+
+    // Middlegame and endgame scores travel packed in one int, the endgame in the upper half,
+    // so a single addition updates both
+    static int pack(int middlegame, int endgame) { return (endgame << 16) + middlegame; }
+    static int middlegame(int score)             { return (short)score; }
+    static int endgame(int score)                { return (short)((score + 0x8000) >> 16); }
+
+    // Material, indexed by piece type
+    private static final int[] MG_VALUES = {0, 0, 0, 337, 477, 365, 1025, 82};
+    private static final int[] EG_VALUES = {0, 0, 0, 281, 512, 297,  936, 94};
+
+    // Game phase each piece is worth, the sum is 24 with all of them on the board
+    private static final int[] PHASES    = {0, 0, 0, 1, 2, 1, 4, 0};
+    private static final int   MAX_PHASE = 24;
+
+    // Piece-square tables from white's point of view, written with the eighth rank first
+    private static final int[] MG_KING = {
+        -65,  23,  16, -15, -56, -34,   2,  13,
+         29,  -1, -20,  -7,  -8,  -4, -38, -29,
+         -9,  24,   2, -16, -20,   6,  22, -22,
+        -17, -20, -12, -27, -30, -25, -14, -36,
+        -49,  -1, -27, -39, -46, -44, -33, -51,
+        -14, -14, -22, -46, -44, -30, -15, -27,
+          1,   7,  -8, -64, -43, -16,   9,   8,
+        -15,  36,  12, -54,   8, -28,  24,  14,
+    };
+    private static final int[] EG_KING = {
+        -74, -35, -18, -18, -11,  15,   4, -17,
+        -12,  17,  14,  17,  17,  38,  23,  11,
+         10,  17,  23,  15,  20,  45,  44,  13,
+         -8,  22,  24,  27,  26,  33,  26,   3,
+        -18,  -4,  21,  24,  27,  23,   9, -11,
+        -19,  -3,  11,  21,  23,  16,   7,  -9,
+        -27, -11,   4,  13,  14,   4,  -5, -17,
+        -53, -34, -21, -11, -28, -14, -24, -43,
+    };
+    private static final int[] MG_KNIGHT = {
+       -167, -89, -34, -49,  61, -97, -15,-107,
+        -73, -41,  72,  36,  23,  62,   7, -17,
+        -47,  60,  37,  65,  84, 129,  73,  44,
+         -9,  17,  19,  53,  37,  69,  18,  22,
+        -13,   4,  16,  13,  28,  19,  21,  -8,
+        -23,  -9,  12,  10,  19,  17,  25, -16,
+        -29, -53, -12,  -3,  -1,  18, -14, -19,
+       -105, -21, -58, -33, -17, -28, -19, -23,
+    };
+    private static final int[] EG_KNIGHT = {
+        -58, -38, -13, -28, -31, -27, -63, -99,
+        -25,  -8, -25,  -2,  -9, -25, -24, -52,
+        -24, -20,  10,   9,  -1,  -9, -19, -41,
+        -17,   3,  22,  22,  22,  11,   8, -18,
+        -18,  -6,  16,  25,  16,  17,   4, -18,
+        -23,  -3,  -1,  15,  10,  -3, -20, -22,
+        -42, -20, -10,  -5,  -2, -20, -23, -44,
+        -29, -51, -23, -15, -22, -18, -50, -64,
+    };
+    private static final int[] MG_ROOK = {
+         32,  42,  32,  51,  63,   9,  31,  43,
+         27,  32,  58,  62,  80,  67,  26,  44,
+         -5,  19,  26,  36,  17,  45,  61,  16,
+        -24, -11,   7,  26,  24,  35,  -8, -20,
+        -36, -26, -12,  -1,   9,  -7,   6, -23,
+        -45, -25, -16, -17,   3,   0,  -5, -33,
+        -44, -16, -20,  -9,  -1,  11,  -6, -71,
+        -19, -13,   1,  17,  16,   7, -37, -26,
+    };
+    private static final int[] EG_ROOK = {
+         13,  10,  18,  15,  12,  12,   8,   5,
+         11,  13,  13,  11,  -3,   3,   8,   3,
+          7,   7,   7,   5,   4,  -3,  -5,  -3,
+          4,   3,  13,   1,   2,   1,  -1,   2,
+          3,   5,   8,   4,  -5,  -6,  -8, -11,
+         -4,   0,  -5,  -1,  -7, -12,  -8, -16,
+         -6,  -6,   0,   2,  -9,  -9, -11,  -3,
+         -9,   2,   3,  -1,  -5, -13,   4, -20,
+    };
+    private static final int[] MG_BISHOP = {
+        -29,   4, -82, -37, -25, -42,   7,  -8,
+        -26,  16, -18, -13,  30,  59,  18, -47,
+        -16,  37,  43,  40,  35,  50,  37,  -2,
+         -4,   5,  19,  50,  37,  37,   7,  -2,
+         -6,  13,  13,  26,  34,  12,  10,   4,
+          0,  15,  15,  15,  14,  27,  18,  10,
+          4,  15,  16,   0,   7,  21,  33,   1,
+        -33,  -3, -14, -21, -13, -12, -39, -21,
+    };
+    private static final int[] EG_BISHOP = {
+        -14, -21, -11,  -8,  -7,  -9, -17, -24,
+         -8,  -4,   7, -12,  -3, -13,  -4, -14,
+          2,  -8,   0,  -1,  -2,   6,   0,   4,
+         -3,   9,  12,   9,  14,  10,   3,   2,
+         -6,   3,  13,  19,   7,  10,  -3,  -9,
+        -12,  -3,   8,  10,  13,   3,  -7, -15,
+        -14, -18,  -7,  -1,   4,  -9, -15, -27,
+        -23,  -9, -23,  -5,  -9, -16,  -5, -17,
+    };
+    private static final int[] MG_QUEEN = {
+        -28,   0,  29,  12,  59,  44,  43,  45,
+        -24, -39,  -5,   1, -16,  57,  28,  54,
+        -13, -17,   7,   8,  29,  56,  47,  57,
+        -27, -27, -16, -16,  -1,  17,  -2,   1,
+         -9, -26,  -9, -10,  -2,  -4,   3,  -3,
+        -14,   2, -11,  -2,  -5,   2,  14,   5,
+        -35,  -8,  11,   2,   8,  15,  -3,   1,
+         -1, -18,  -9,  10, -15, -25, -31, -50,
+    };
+    private static final int[] EG_QUEEN = {
+         -9,  22,  22,  27,  27,  19,  10,  20,
+        -17,  20,  32,  41,  58,  25,  30,   0,
+        -20,   6,   9,  49,  47,  35,  19,   9,
+          3,  22,  24,  45,  57,  40,  57,  36,
+        -18,  28,  19,  47,  31,  34,  39,  23,
+        -16, -27,  15,   6,   9,  17,  10,   5,
+        -22, -23, -30, -16, -16, -23, -36, -32,
+        -33, -28, -22, -43,  -5, -32, -20, -41,
+    };
+    private static final int[] MG_PAWN = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         98, 134,  61,  95,  68, 126,  34, -11,
+         -6,   7,  26,  31,  65,  56,  25, -20,
+        -14,  13,   6,  21,  23,  12,  17, -23,
+        -27,  -2,  -5,  12,  17,   6,  10, -25,
+        -26,  -4,  -4, -10,   3,   3,  33, -12,
+        -35,  -1, -20, -23, -15,  24,  38, -22,
+          0,   0,   0,   0,   0,   0,   0,   0,
+    };
+    private static final int[] EG_PAWN = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+        178, 173, 158, 134, 147, 132, 165, 187,
+         94, 100,  85,  67,  56,  53,  82,  84,
+         32,  24,  13,   5,  -2,   4,  17,  17,
+         13,   9,  -3,  -7,  -7,  -8,   3,  -1,
+          4,   7,  -6,   1,   0,  -5,  -1,  -8,
+         13,   8,   8,  10,  13,   0,   2,  -7,
+          0,   0,   0,   0,   0,   0,   0,   0,
+    };
+
+    // https://www.chessprogramming.org/Pawn_Structure
+
+    // Pawn structure terms, packed like the tables, passers indexed by rank counted from their own side
+    private static final int   DOUBLED     = pack(-10, -25);
+    private static final int   ISOLATED    = pack( -8, -12);
+    private static final int   BACKWARD    = pack( -6, -10);
+    private static final int[] PASSED      = {0, pack(2, 5), pack(5, 10), pack(10, 20), pack(20, 40),
+                                              pack(35, 70), pack(55, 110), 0};
+    private static final int   SHIELD_NEAR = pack(12, 0);
+    private static final int   SHIELD_FAR  = pack( 6, 0);
+
+    // Pawn structure masks, indexed by file or by color and square
+    private static final long[]   FILES     = new long[8];
+    private static final long[]   ADJACENT  = new long[8];
+    private static final long[][] PASSAGE   = new long[2][64];
+    private static final long[][] SUPPORT   = new long[2][64];
+    private static final long[][] SHIELD    = new long[2][64];
+    private static final long[][] ATTACKS   = Piece.getCaptureMoves()[Piece.PAWN];
+
+    static {
+        for (int file = 0; file < 8; file++)
+            FILES[file] = 0x0101010101010101L << file;
+        for (int file = 0; file < 8; file++)
+            ADJACENT[file] = (file > 0 ? FILES[file - 1] : 0L) | (file < 7 ? FILES[file + 1] : 0L);
+
+        for (int square = 0; square < 64; square++) {
+
+            int  file   = square & 7;
+            int  rank   = square >>> 3;
+            long span   = FILES[file] | ADJACENT[file];
+            long above  = rank < 7 ? -1L << 8 * (rank + 1) : 0L;
+            long below  = rank > 0 ? -1L >>> 8 * (8 - rank) : 0L;
+
+            // Squares an enemy pawn could stop or capture a passer from
+            PASSAGE[Piece.WHITE][square] = span & above;
+            PASSAGE[Piece.BLACK][square] = span & below;
+
+            // Friendly pawns beside or behind, which could still come up to defend
+            SUPPORT[Piece.WHITE][square] = ADJACENT[file] & ~above;
+            SUPPORT[Piece.BLACK][square] = ADJACENT[file] & ~below;
+
+            // The two ranks in front of a king, on its file and the neighbouring ones
+            long front = rank < 7 ? span & 0xFFL << 8 * (rank + 1) : 0L;
+            long next  = rank < 6 ? span & 0xFFL << 8 * (rank + 2) : 0L;
+            SHIELD[Piece.WHITE][square] = front | next;
+            front = rank > 0 ? span & 0xFFL << 8 * (rank - 1) : 0L;
+            next  = rank > 1 ? span & 0xFFL << 8 * (rank - 2) : 0L;
+            SHIELD[Piece.BLACK][square] = front | next;
+        }
+    }
+
+    // Packed pawn structure score from white's side. Depends on the pawns only,
+    // so it can be cached under the pawn key.
+    static int pawns(long[] boards) {
+
+        int score = 0;
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++) {
+
+            int  sign    = color == Piece.WHITE ? 1 : -1;
+            int  forward = color == Piece.WHITE ? 8 : -8;
+            long own     = boards[Piece.PAWN] & boards[color];
+            long opp     = boards[Piece.PAWN] & boards[1 - color];
+
+            for (int file = 0; file < 8; file++) {
+                int count = Long.bitCount(own & FILES[file]);
+                if (count > 1)
+                    score += sign * DOUBLED * (count - 1);
+            }
+
+            for (long pawns = own; pawns != 0; pawns = Bitboard.popLowest(pawns)) {
+
+                int     square     = Bitboard.lowestSquare(pawns);
+                int     file       = square & 7;
+                boolean isIsolated = (own & ADJACENT[file]) == 0;
+
+                if (isIsolated)
+                    score += sign * ISOLATED;
+
+                // Nothing in front can stop it, the closer to promotion the better
+                if ((opp & PASSAGE[color][square]) == 0)
+                    score += sign * PASSED[color == Piece.WHITE ? square >>> 3 : 7 - (square >>> 3)];
+
+                // No friend can come up beside it and an enemy pawn guards the square in front
+                else if (!isIsolated && (own & SUPPORT[color][square]) == 0 &&
+                         (ATTACKS[color][square + forward] & opp) != 0)
+                    score += sign * BACKWARD;
+            }
+
+        }
+        return score;
+    }
+
+    // Packed score of the pawns sheltering each king, nearer ones counting double. Kings move
+    // too often for this to share the pawn cache, and it only takes a few instructions.
+    static int shelter(long[] boards) {
+
+        int score = 0;
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++) {
+
+            int  sign    = color == Piece.WHITE ? 1 : -1;
+            int  king    = Bitboard.lowestSquare(boards[Piece.KING] & boards[color]);
+            long shelter = boards[Piece.PAWN] & boards[color] & SHIELD[color][king];
+            long near    = shelter & 0xFFL << 8 * ((king >>> 3) + (color == Piece.WHITE ? 1 : -1) & 7);
+            score += sign * (SHIELD_NEAR * Long.bitCount(near) + SHIELD_FAR * Long.bitCount(shelter & ~near));
+        }
+        return score;
+    }
+
+    // Packed material plus table score of a piece on a square, negated for black so the sum
+    // over the board is white's score. Indexed like the boards.
+    static final int[][][] PIECE_SQUARE = new int[2][8][64];
+
+    static {
+        int[][] middlegame = {null, null, MG_KING, MG_KNIGHT, MG_ROOK, MG_BISHOP, MG_QUEEN, MG_PAWN};
+        int[][] endgame    = {null, null, EG_KING, EG_KNIGHT, EG_ROOK, EG_BISHOP, EG_QUEEN, EG_PAWN};
+
+        for (int type = Piece.KING; type <= Piece.PAWN; type++)
+            for (int square = 0; square < 64; square++) {
+
+                // The tables start at A8, black sees them mirrored
+                int white = square ^ 56;
+                int black = square;
+                PIECE_SQUARE[Piece.WHITE][type][square] =  pack(MG_VALUES[type] + middlegame[type][white],
+                                                                EG_VALUES[type] + endgame[type][white]);
+                PIECE_SQUARE[Piece.BLACK][type][square] = -pack(MG_VALUES[type] + middlegame[type][black],
+                                                                EG_VALUES[type] + endgame[type][black]);
+            }
+    }
+
+    // Packed score from scratch, only for setup and testing
+    static int compute(long[] boards) {
+
+        int score = 0;
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                for (long pieces = boards[color] & boards[type]; pieces != 0; pieces = Bitboard.popLowest(pieces))
+                    score += PIECE_SQUARE[color][type][Bitboard.lowestSquare(pieces)];
+        return score;
+    }
+
+    // Game phase from 0 in bare endgames up to MAX_PHASE with all pieces on
+    static int phase(long[] boards) {
+
+        int phase = 0;
+        for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++)
+            phase += PHASES[type] * Long.bitCount(boards[type]);
+        return Math.min(phase, MAX_PHASE);
+    }
+
+    // Blend the packed score by phase, from the point of view of the given color
+    static int evaluate(int score, long[] boards, int color) {
+
+        int phase   = phase(boards);
+        int blended = (middlegame(score) * phase + endgame(score) * (MAX_PHASE - phase)) / MAX_PHASE;
+        return color == Piece.WHITE ? blended : -blended;
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        // Bare kings, an isolated passer, doubled isolated passers, facing pawns cancelling out,
+        // a king shield, and a backward pawn behind a passer
+        String[][] structures = {
+            {"4k3/8/8/8/8/8/8/4K3 w - - 0 1",         "0",     "0"},
+            {"4k3/8/8/8/8/8/P7/4K3 w - - 0 1",        "-6",    "-7"},
+            {"4k3/8/8/8/8/P7/P7/4K3 w - - 0 1",       "-19",   "-34"},
+            {"4k3/p7/8/8/8/8/P7/4K3 w - - 0 1",       "0",     "0"},
+            {"4k3/8/8/8/8/8/3PPP2/4K3 w - - 0 1",     "42",    "15"},
+            {"4k3/8/8/p7/2P5/1P6/8/4K3 w - - 0 1",    "12",    "22"},
+        };
+        for (String[] structure : structures) {
+            Chessboard board = Chessboard.fromFen(structure[0]);
+            int score = pawns(board.getBoards()) + shelter(board.getBoards());
+            if (middlegame(score) != Integer.parseInt(structure[1]) || endgame(score) != Integer.parseInt(structure[2]))
+                throw new UnitTestException("Pawn structure of " + structure[0] + " is " + middlegame(score) +
+                        " " + endgame(score) + ".");
+        }
+
+        // Packing round trips, negative halves included
+        int[][] pairs = {{0, 0}, {100, -50}, {-1025, 936}, {-3000, -3000}, {32000, -32000}};
+        for (int[] pair : pairs) {
+            int score = pack(pair[0], pair[1]);
+            if (middlegame(score) != pair[0] || endgame(score) != pair[1])
+                throw new UnitTestException("Packing is wrong.");
+            if (middlegame(score + pack(7, -7)) != pair[0] + 7 || endgame(-score) != -pair[1])
+                throw new UnitTestException("Packed arithmetic is wrong.");
+        }
+
+        // Mirrored squares cancel out
+        for (int type = Piece.KING; type <= Piece.PAWN; type++)
+            for (int square = 0; square < 64; square++)
+                if (PIECE_SQUARE[Piece.WHITE][type][square] + PIECE_SQUARE[Piece.BLACK][type][square ^ 56] != 0)
+                    throw new UnitTestException("Tables are not mirrored.");
+
+        // Knights prefer the center, pawns prefer to advance in the endgame
+        if (middlegame(PIECE_SQUARE[Piece.WHITE][Piece.KNIGHT][Bitboard.indexFromFileRank('E', 4)]) <=
+            middlegame(PIECE_SQUARE[Piece.WHITE][Piece.KNIGHT][Bitboard.indexFromFileRank('A', 1)]))
+            throw new UnitTestException("Knight table is upside down.");
+        if (endgame(PIECE_SQUARE[Piece.WHITE][Piece.PAWN][Bitboard.indexFromFileRank('B', 7)]) <=
+            endgame(PIECE_SQUARE[Piece.WHITE][Piece.PAWN][Bitboard.indexFromFileRank('B', 2)]))
+            throw new UnitTestException("Pawn table is upside down.");
+    }
+}
@@ -0,0 +1,24 @@
+package representation;
+
+public interface IncrementalEvaluator {
+
+    // An evaluator the board keeps informed of every piece each move takes away or puts down,
+    // so it can update its state rather than recompute it at every leaf. Attached with
+    // Chessboard.setEvaluator, after which the board's evaluate() defers to it.
+
+    // Rebuild everything from the board's current position
+    void refresh(Chessboard board);
+
+    // A move is about to be made, keep the current state to return to on pop
+    void push();
+
+    // The last move was taken back
+    void pop();
+
+    // Pieces changing during the move just pushed
+    void add(int square, int type, int color);
+    void remove(int square, int type, int color);
+
+    // Score in centipawns from the side to move's point of view
+    int evaluate(Chessboard board);
+}
@@ -0,0 +1,226 @@
+package representation;
+
+class Magic {
+
+    // https://www.chessprogramming.org/Magic_Bitboards
+
+    // Sliding directions
+    private static final int[] ROOK_D_FILE   = {+1, +0, -1, +0};
+    private static final int[] ROOK_D_RANK   = {+0, +1, +0, -1};
+    private static final int[] BISHOP_D_FILE = {+1, +1, -1, -1};
+    private static final int[] BISHOP_D_RANK = {+1, -1, +1, -1};
+
+    // Fixed seed so the magics (and thus the tables) are identical on every run
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    // Relevant occupancy masks, magic multipliers, shifts and table offsets per square
+    private static final long[] rookMasks     = new long[64];
+    private static final long[] rookMagics    = new long[64];
+    private static final int[]  rookShifts    = new int[64];
+    private static final int[]  rookOffsets   = new int[64];
+    private static final long[] bishopMasks   = new long[64];
+    private static final long[] bishopMagics  = new long[64];
+    private static final int[]  bishopShifts  = new int[64];
+    private static final int[]  bishopOffsets = new int[64];
+
+    // Flat attack tables, each square owning a contiguous slice
+    private static final long[] rookTable;
+    private static final long[] bishopTable;
+
+    // PRNG state used while searching for magics
+    private static long state = SEED;
+
+    static {
+        rookTable   = initialize(ROOK_D_FILE,   ROOK_D_RANK,   rookMasks,   rookMagics,   rookShifts,   rookOffsets);
+        bishopTable = initialize(BISHOP_D_FILE, BISHOP_D_RANK, bishopMasks, bishopMagics, bishopShifts, bishopOffsets);
+    }
+
+    // Attack lookups
+    static long rookAttacks(int square, long occupancy) {
+        return rookTable[rookOffsets[square] +
+                (int)(((occupancy & rookMasks[square]) * rookMagics[square]) >>> rookShifts[square])];
+    }
+
+    static long bishopAttacks(int square, long occupancy) {
+        return bishopTable[bishopOffsets[square] +
+                (int)(((occupancy & bishopMasks[square]) * bishopMagics[square]) >>> bishopShifts[square])];
+    }
+
+    static long queenAttacks(int square, long occupancy) {
+        return rookAttacks(square, occupancy) | bishopAttacks(square, occupancy);
+    }
+
+    // Slow reference attacks, only used while building the tables
+    private static long slidingAttacks(int square, long occupancy, int[] dFile, int[] dRank) {
+
+        long attacks = 0L;
+        int  file    = square & 7;
+        int  rank    = square >>> 3;
+
+        // Span all slide directions
+        for (int index = 0; index < dFile.length; index++)
+
+            // Span all depths of sliding, stopping on the first blocker
+            for (int depth = 1; true; depth++) {
+
+                int toFile = file + dFile[index] * depth;
+                int toRank = rank + dRank[index] * depth;
+
+                if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7)
+                    break;
+
+                long bit = 1L << (toFile + toRank * 8);
+                attacks |= bit;
+                if ((occupancy & bit) != 0)
+                    break;
+            }
+        return attacks;
+    }
+
+    // Squares whose occupancy matters: the empty board rays without their final square
+    private static long relevantMask(int square, int[] dFile, int[] dRank) {
+
+        long mask = 0L;
+        int  file = square & 7;
+        int  rank = square >>> 3;
+
+        for (int index = 0; index < dFile.length; index++)
+            for (int depth = 1; true; depth++) {
+
+                int nextFile = file + dFile[index] * (depth + 1);
+                int nextRank = rank + dRank[index] * (depth + 1);
+
+                if (nextFile < 0 || nextFile > 7 || nextRank < 0 || nextRank > 7)
+                    break;
+
+                mask |= 1L << (file + dFile[index] * depth + (rank + dRank[index] * depth) * 8);
+            }
+        return mask;
+    }
+
+    // xorshift64*, good enough to find magics quickly
+    private static long nextRandom() {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+
+    // Magics work best with few set bits
+    private static long nextSparseRandom() {
+        return nextRandom() & nextRandom() & nextRandom();
+    }
+
+    // Find every magic for one piece kind and fill its attack table
+    private static long[] initialize(int[] dFile, int[] dRank, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+
+        // Size the flat table
+        int size = 0;
+        for (int square = 0; square < 64; square++) {
+            masks[square]   = relevantMask(square, dFile, dRank);
+            shifts[square]  = 64 - Long.bitCount(masks[square]);
+            offsets[square] = size;
+            size += 1 << Long.bitCount(masks[square]);
+        }
+        long[] table = new long[size];
+
+        // Scratch space for one square
+        long[] occupancies = new long[4096];
+        long[] references  = new long[4096];
+        int[]  epochs      = new int[4096];
+        int    epoch       = 0;
+
+        for (int square = 0; square < 64; square++) {
+
+            // Enumerate all subsets of the mask (Carry-Rippler)
+            int  count = 0;
+            long subset = 0L;
+            do {
+                occupancies[count] = subset;
+                references[count]  = slidingAttacks(square, subset, dFile, dRank);
+                count++;
+                subset = (subset - masks[square]) & masks[square];
+            } while (subset != 0);
+
+            // Try candidates until one maps every subset without destructive collisions
+            int offset = offsets[square];
+            int shift  = shifts[square];
+            while (true) {
+
+                long magic = nextSparseRandom();
+                if (Long.bitCount((masks[square] * magic) & 0xFF00000000000000L) < 6)
+                    continue;
+
+                epoch++;
+                boolean isGood = true;
+                for (int i = 0; i < count && isGood; i++) {
+
+                    int index = (int)((occupancies[i] * magic) >>> shift);
+                    if (epochs[index] < epoch) {
+                        epochs[index] = epoch;
+                        table[offset + index] = references[i];
+                    } else if (table[offset + index] != references[i])
+                        isGood = false;
+                }
+
+                if (isGood) {
+                    magics[square] = magic;
+                    break;
+                }
+            }
+        }
+        return table;
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        // Rook on E4 with blockers on E6, B4 and G4
+        int  square    = 28;
+        long occupancy = 0L;
+        occupancy |= 1L << 44;
+        occupancy |= 1L << 25;
+        occupancy |= 1L << 30;
+
+        Bitboard board = new Bitboard();
+        board.setBit('E', 1, true);
+        board.setBit('E', 2, true);
+        board.setBit('E', 3, true);
+        board.setBit('E', 5, true);
+        board.setBit('E', 6, true);
+        board.setBit('B', 4, true);
+        board.setBit('C', 4, true);
+        board.setBit('D', 4, true);
+        board.setBit('F', 4, true);
+        board.setBit('G', 4, true);
+
+        if (!board.equals(new Bitboard(rookAttacks(square, occupancy))))
+            throw new UnitTestException("Rook magic attacks are bad.");
+
+        // Bishop on C1 with a blocker on E3
+        square    = 2;
+        occupancy = 1L << 20;
+
+        board = new Bitboard();
+        board.setBit('B', 2, true);
+        board.setBit('A', 3, true);
+        board.setBit('D', 2, true);
+        board.setBit('E', 3, true);
+
+        if (!board.equals(new Bitboard(bishopAttacks(square, occupancy))))
+            throw new UnitTestException("Bishop magic attacks are bad.");
+
+        // Compare against the slow ray walk on many random occupancies
+        state = 0x123456789ABCDEFL;
+        for (int trial = 0; trial < 100000; trial++) {
+
+            square    = (int)(nextRandom() >>> 58);
+            occupancy = nextRandom() & nextRandom();
+
+            if (rookAttacks(square, occupancy) != slidingAttacks(square, occupancy, ROOK_D_FILE, ROOK_D_RANK))
+                throw new UnitTestException("Rook magic attacks disagree at square " + square);
+            if (bishopAttacks(square, occupancy) != slidingAttacks(square, occupancy, BISHOP_D_FILE, BISHOP_D_RANK))
+                throw new UnitTestException("Bishop magic attacks disagree at square " + square);
+        }
+    }
+}
@@ -1,35 +1,116 @@
 package representation;
 
-class Move {
+public class Move {
 
     // https://www.chessprogramming.org/Encoding_Moves
 
-    // Attributes
-    private Square       from;     // Departing piece
-    private Square       to;       // Destination piece (captured piece, if any)
-    private byte         moveCode; // Encode move status
-    private SpecialFlags flags;    // Flags before move were done
+    // Moves are packed into a single int so move lists can live in int[]
+    //   bits  0-5  : departing square
+    //   bits  6-11 : destination square
+    //   bits 12-15 : move code
+    //   bits 16-18 : captured piece type, zero if nothing was captured
+    // Anything needed to take the move back lives on the board's undo stack.
+    public static final int NONE = 0;
+
+    // Move codes, see the link above
+    static final int QUIET             = 0;
+    static final int DOUBLE_PAWN_PUSH  = 1;
+    static final int KING_CASTLE       = 2;
+    static final int QUEEN_CASTLE      = 3;
+    static final int CAPTURE           = 4;
+    static final int EN_PASSANT        = 5;
+    static final int PROMOTION         = 8;
+    static final int PROMOTION_CAPTURE = 12;
+
+    // Packing
+    static int encode(int from, int to, int code) {
+        return from | to << 6 | code << 12;
+    }
+
+    static int encode(int from, int to, int code, int captured) {
+        return from | to << 6 | code << 12 | (captured == Piece.NONE ? 0 : captured) << 16;
+    }
+
+    // Unpacking
+    public static int getFrom(int move) { return move & 0x3F; }
+    public static int getTo(int move)   { return move >>> 6 & 0x3F; }
+    static int getCode(int move) { return move >>> 12 & 0xF; }
+
+    public static int getCaptured(int move) {
+        int captured = move >>> 16 & 0x7;
+        return captured == 0 ? Piece.NONE : captured;
+    }
 
     // Read the move code
-    boolean readMoveCode(int index) {
-        return (this.moveCode >> index & 1) > 0;
+    static boolean readMoveCode(int move, int index) {
+        return (move >>> 12 + index & 1) > 0;
     }
 
-    boolean isPromotion() {
-        return this.readMoveCode(3);
+    public static boolean isPromotion(int move) {
+        return readMoveCode(move, 3);
     }
 
-    boolean isCapture() {
-        return this.readMoveCode(2);
+    public static boolean isCapture(int move) {
+        return readMoveCode(move, 2);
     }
 
-    boolean isCastle() {
-        return this.moveCode == 2 || this.moveCode == 3;
+    public static boolean isCastle(int move) {
+        return getCode(move) == KING_CASTLE || getCode(move) == QUEEN_CASTLE;
     }
 
-    int getPromotedPiece() {
-        return this.moveCode % 4 + Piece.KNIGHT;
+    public static int getPromotedPiece(int move) {
+        return getCode(move) % 4 + Piece.KNIGHT;
     }
 
-    // Constructors
+    // Long algebraic notation, as in e2e4 or e7e8q
+    public static String toString(int move) {
+
+        StringBuilder output = new StringBuilder();
+        output.append(Character.toLowerCase(Bitboard.fileOf(getFrom(move))));
+        output.append(Bitboard.rankOf(getFrom(move)));
+        output.append(Character.toLowerCase(Bitboard.fileOf(getTo(move))));
+        output.append(Bitboard.rankOf(getTo(move)));
+
+        if (isPromotion(move)) {
+            char[] names = new char[8];
+            names[Piece.KNIGHT] = 'n';
+            names[Piece.ROOK]   = 'r';
+            names[Piece.BISHOP] = 'b';
+            names[Piece.QUEEN]  = 'q';
+            output.append(names[getPromotedPiece(move)]);
+        }
+        return output.toString();
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        // Plain quiet move
+        int move = encode(Bitboard.indexFromFileRank('E', 2), Bitboard.indexFromFileRank('E', 4), DOUBLE_PAWN_PUSH);
+        if (getFrom(move) != 12 || getTo(move) != 28 || getCode(move) != DOUBLE_PAWN_PUSH)
+            throw new UnitTestException("Packing is wrong.");
+        if (isCapture(move) || isPromotion(move) || isCastle(move) || getCaptured(move) != Piece.NONE)
+            throw new UnitTestException("Move code is wrong.");
+        if (!toString(move).equals("e2e4"))
+            throw new UnitTestException("Notation is wrong.");
+
+        // Capturing promotion to a rook
+        move = encode(Bitboard.indexFromFileRank('G', 7), Bitboard.indexFromFileRank('H', 8),
+                PROMOTION_CAPTURE | Piece.ROOK - Piece.KNIGHT, Piece.BISHOP);
+        if (!isCapture(move) || !isPromotion(move) || isCastle(move))
+            throw new UnitTestException("Move code is wrong.");
+        if (getPromotedPiece(move) != Piece.ROOK || getCaptured(move) != Piece.BISHOP)
+            throw new UnitTestException("Promotion is wrong.");
+        if (!toString(move).equals("g7h8r"))
+            throw new UnitTestException("Notation is wrong.");
+
+        // Castles
+        if (!isCastle(encode(4, 6, KING_CASTLE)) || !isCastle(encode(60, 58, QUEEN_CASTLE)))
+            throw new UnitTestException("Castling is wrong.");
+
+        // Every promotion round trips
+        for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++)
+            if (getPromotedPiece(encode(52, 60, PROMOTION | type - Piece.KNIGHT)) != type)
+                throw new UnitTestException("Promotion is wrong.");
+    }
 }
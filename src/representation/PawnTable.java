@@ -0,0 +1,123 @@
+package representation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class PawnTable {
+
+    // https://www.chessprogramming.org/Pawn_Hash_Table
+
+    // Pawn structure changes on few moves, so its score is cached under a key of the pawns
+    // alone. One table per searching thread, nothing here is shared.
+
+    // Attributes
+    private long[] keys;
+    private int[]  scores;
+    private int    mask;
+
+    // Counters for tuning the size
+    private long probes;
+    private long hits;
+
+    // Constructor, rounding down to a power of two number of entries
+    public PawnTable(int kilobytes) {
+
+        if (kilobytes < 1)
+            throw new IllegalArgumentException("Pawn table size must be at least 1 KB, got " + kilobytes + ".");
+
+        int entries = Integer.highestOneBit(kilobytes * 1024 / (Long.BYTES + Integer.BYTES));
+        this.keys   = new long[entries];
+        this.scores = new int[entries];
+        this.mask   = entries - 1;
+        this.clear();
+    }
+
+    public void clear() {
+
+        // A key no pawn structure is expected to have, zero being the key without pawns
+        Arrays.fill(this.keys, -1L);
+        this.probes = 0;
+        this.hits   = 0;
+    }
+
+    // Packed pawn structure score of the boards, computed and stored on a miss
+    int probe(long key, long[] boards) {
+
+        int index = (int)key & this.mask;
+        this.probes++;
+        if (this.keys[index] == key) {
+            this.hits++;
+            return this.scores[index];
+        }
+
+        int score = Evaluation.pawns(boards);
+        this.keys[index]   = key;
+        this.scores[index] = score;
+        return score;
+    }
+
+    // Counters
+    public int    getEntries() { return this.keys.length; }
+    public long   getProbes()  { return this.probes; }
+    public long   getHits()    { return this.hits; }
+    public double getHitRate() { return this.probes == 0 ? 0 : (double)this.hits / this.probes; }
+
+    public void resetCounters() {
+        this.probes = 0;
+        this.hits   = 0;
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        // Sizing rounds down to a power of two
+        PawnTable table = new PawnTable(64);
+        if (table.getEntries() != 4096)
+            throw new UnitTestException("Sizing is wrong.");
+
+        // Random games, where cached scores always equal fresh ones
+        Random random = new Random(11);
+        int[] moves = new int[Chessboard.MAX_MOVES];
+        for (int game = 0; game < 20; game++) {
+
+            Chessboard board = new Chessboard();
+            board.setPawnTable(table);
+            for (int made = 0; made < 150; made++) {
+                int count = board.generateMoves(moves);
+                if (count == 0)
+                    break;
+                board.makeMove(moves[random.nextInt(count)]);
+                if (table.probe(board.getPawnHash(), board.getBoards()) != Evaluation.pawns(board.getBoards()))
+                    throw new UnitTestException("Cached pawn score is wrong.");
+            }
+        }
+        if (table.getHits() > table.getProbes())
+            throw new UnitTestException("Counters are wrong.");
+
+        // A search evaluates once per node, and most nodes of a middlegame tree share their pawns
+        table.clear();
+        Chessboard board = Chessboard.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        board.setPawnTable(table);
+        evaluateTree(board, 3, new int[4][Chessboard.MAX_MOVES]);
+        if (table.getHitRate() < 0.95)
+            throw new UnitTestException("Hit rate is wrong: " + table.getHitRate());
+
+        table.resetCounters();
+        if (table.getProbes() != 0 || table.getHitRate() != 0)
+            throw new UnitTestException("Counters are wrong.");
+    }
+
+    // Evaluate every node down to the depth, as a search without pruning would
+    private static void evaluateTree(Chessboard board, int depth, int[][] moves) {
+
+        board.evaluate();
+        if (depth == 0)
+            return;
+        int count = board.generateMoves(moves[depth]);
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[depth][i]);
+            evaluateTree(board, depth - 1, moves);
+            board.unmakeMove();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package representation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+class Perft {
+
+    // https://www.chessprogramming.org/Perft_Results
+
+    // Standard positions with known counts: FEN, depth, expected nodes
+    private static final String[][] SUITE = {
+        {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",                 "5", "4865609"},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",     "4", "4085603"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",                                "5", "674624"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",         "4", "422333"},
+        {"r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1",         "4", "422333"},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",                "4", "2103487"},
+    };
+
+    // Parallel runs fork one task per move for this many plies below the root
+    private static final int SPLIT_PLIES = 2;
+
+    // Attributes
+    private Chessboard board;
+    private int[][]    buffers;
+    private boolean    isBulk;
+    private PerftTable table;
+
+    // Constructors
+    Perft(Chessboard board, int maxDepth, boolean isBulk, PerftTable table) {
+
+        this.board   = board;
+        this.buffers = new int[maxDepth + 1][Chessboard.MAX_MOVES];
+        this.isBulk  = isBulk;
+        this.table   = table;
+    }
+
+    Perft(Chessboard board, int maxDepth, boolean isBulk) {
+
+        this(board, maxDepth, isBulk, null);
+    }
+
+    // Count the leaf nodes below the current position
+    long count(int depth) {
+
+        if (depth == 0)
+            return 1;
+
+        int[] moves = this.buffers[depth];
+        int   count = this.board.generateMoves(moves);
+
+        // Every legal move at the last ply is a leaf, no need to make them
+        if (depth == 1 && this.isBulk)
+            return count;
+
+        // Transposed subtrees are only counted once
+        if (this.table != null && depth > 1) {
+            long cached = this.table.probe(this.board.getHash(), depth);
+            if (cached >= 0)
+                return cached;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            this.board.makeMove(moves[i]);
+            nodes += this.count(depth - 1);
+            this.board.unmakeMove();
+        }
+
+        if (this.table != null && depth > 1)
+            this.table.store(this.board.getHash(), depth, nodes);
+        return nodes;
+    }
+
+    // Subtree counted on a pool thread, each task owning its copy of the board
+    private static class PerftTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        // Attributes
+        private Chessboard board;
+        private int        depth;
+        private int        splitPlies;
+        private boolean    isBulk;
+        private PerftTable table;
+
+        private PerftTask(Chessboard board, int depth, int splitPlies, boolean isBulk, PerftTable table) {
+
+            this.board      = board;
+            this.depth      = depth;
+            this.splitPlies = splitPlies;
+            this.isBulk     = isBulk;
+            this.table      = table;
+        }
+
+        @Override
+        protected Long compute() {
+
+            // Small subtrees aren't worth forking
+            if (this.splitPlies == 0 || this.depth <= 2)
+                return new Perft(this.board, this.depth, this.isBulk, this.table).count(this.depth);
+
+            int[] moves = new int[Chessboard.MAX_MOVES];
+            int   count = this.board.generateMoves(moves);
+
+            ArrayList<PerftTask> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Chessboard child = new Chessboard(this.board);
+                child.makeMove(moves[i]);
+                tasks.add(new PerftTask(child, this.depth - 1, this.splitPlies - 1, this.isBulk, this.table));
+            }
+
+            long nodes = 0;
+            for (PerftTask task : invokeAll(tasks))
+                nodes += task.join();
+            return nodes;
+        }
+    }
+
+    // Count with the given number of threads, one meaning the plain sequential count
+    static long count(Chessboard board, int depth, int threads, boolean isBulk, PerftTable table) {
+
+        if (threads <= 1)
+            return new Perft(new Chessboard(board), depth, isBulk, table).count(depth);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new PerftTask(new Chessboard(board), depth, SPLIT_PLIES, isBulk, table));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Count per root move, printing each subtotal
+    long divide(int depth) {
+
+        int[] moves = this.buffers[depth];
+        int   count = this.board.generateMoves(moves);
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            this.board.makeMove(moves[i]);
+            long subtotal = this.count(depth - 1);
+            this.board.unmakeMove();
+
+            System.out.println(Move.toString(moves[i]) + ": " + subtotal);
+            nodes += subtotal;
+        }
+        System.out.println();
+        System.out.println("Moves: " + count);
+        System.out.println("Nodes: " + nodes);
+        return nodes;
+    }
+
+    // Run the suite, failing on the first wrong count, and return the time taken
+    static long runSuite(int threads, int extraDepth, boolean isBulk, PerftTable table, boolean isVerbose) {
+
+        long totalNodes = 0;
+        long totalNanos = 0;
+
+        for (String[] entry : SUITE) {
+
+            Chessboard board = Chessboard.fromFen(entry[0]);
+            int        depth = Integer.parseInt(entry[1]) + extraDepth;
+
+            long start = System.nanoTime();
+            long nodes = count(board, depth, threads, isBulk, table);
+            long nanos = System.nanoTime() - start;
+
+            if (extraDepth == 0 && nodes != Long.parseLong(entry[2]))
+                throw new UnitTestException("Perft " + depth + " of " + entry[0] + " gave " + nodes +
+                        ", expected " + entry[2] + ".");
+
+            if (isVerbose)
+                System.out.printf("%-75s depth %d %,12d nodes %,8d ms %,12d nps%n",
+                        entry[0], depth, nodes, nanos / 1_000_000, nodes * 1_000_000_000L / Math.max(1, nanos));
+            totalNodes += nodes;
+            totalNanos += nanos;
+        }
+
+        System.out.printf("Total (%d thread%s%s%s): %,d nodes in %,d ms, %,d nps%n",
+                threads, threads == 1 ? "" : "s", isBulk ? ", bulk" : "", table != null ? ", hashed" : "",
+                totalNodes, totalNanos / 1_000_000, totalNodes * 1_000_000_000L / Math.max(1, totalNanos));
+        return totalNanos;
+    }
+
+    // Time the deeper suite at doubling thread counts and report how well it scales
+    static void runScaling(int maxThreads, int extraDepth, int hashMegabytes) {
+
+        long baseline = 0;
+        for (int threads = 1; true; threads = Math.min(2 * threads, maxThreads)) {
+
+            PerftTable table = hashMegabytes > 0 ? new PerftTable(hashMegabytes) : null;
+            long       nanos = runSuite(threads, extraDepth, true, table, false);
+            if (threads == 1)
+                baseline = nanos;
+
+            double speedup = (double)baseline / Math.max(1, nanos);
+            System.out.printf("    %2d threads: speedup %5.2f, efficiency %5.1f%%%n", threads, speedup, 100 * speedup / threads);
+
+            if (threads >= maxThreads)
+                break;
+        }
+    }
+
+    // Unit testing and benchmarking
+    //   no arguments                             : check the suite sequentially and in parallel
+    //   scaling [max threads] [extra depth] [MB] : report parallel scaling on the deeper suite, hashed if MB > 0
+    //   <depth> <fen>                            : divide the position to the given depth
+    public static void main(String[] args) {
+
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        if (args.length >= 1 && args[0].equals("scaling")) {
+            runScaling(args.length > 1 ? Integer.parseInt(args[1]) : cores,
+                       args.length > 2 ? Integer.parseInt(args[2]) : 1,
+                       args.length > 3 ? Integer.parseInt(args[3]) : 0);
+            return;
+        }
+
+        if (args.length >= 2) {
+            int   depth = Integer.parseInt(args[0]);
+            Perft perft = new Perft(Chessboard.fromFen(String.join(" ", Arrays.copyOfRange(args, 1, args.length))),
+                    depth, true);
+            perft.divide(depth);
+            return;
+        }
+
+        runSuite(1, 0, false, null, true);
+        runSuite(1, 0, true, null, true);
+        runSuite(Math.max(2, cores), 0, true, null, false);
+
+        // The table is opt-in, it does not pay for itself at these depths, but its counts must still be right
+        PerftTable table = new PerftTable(1);
+        for (String[] entry : SUITE) {
+            long nodes = count(Chessboard.fromFen(entry[0]), Integer.parseInt(entry[1]), 2, true, table);
+            if (nodes != Long.parseLong(entry[2]))
+                throw new UnitTestException("Hashed perft of " + entry[0] + " gave " + nodes + ", expected " + entry[2] + ".");
+        }
+    }
+}
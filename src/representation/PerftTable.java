@@ -0,0 +1,60 @@
+package representation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+class PerftTable {
+
+    // Shared cache of subtree counts keyed by position and depth, safe for many threads without locks.
+    // Each slot is two longs: key ^ data, then data, where data holds the node count above the depth.
+    private static final int LONGS_PER_SLOT = 2;
+    private static final int DEPTH_BITS     = 8;
+    private static final int DEPTH_MASK     = (1 << DEPTH_BITS) - 1;
+
+    // Atomic, but otherwise unordered, access to the slots
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Attributes
+    private long[] table;
+    private int    slotMask;
+
+    // Constructor
+    PerftTable(int megabytes) {
+
+        if (megabytes < 1)
+            throw new IllegalArgumentException("Perft table size must be at least 1 MB, got " + megabytes + ".");
+
+        long slots = Long.highestOneBit((long)megabytes * 1024 * 1024 / (LONGS_PER_SLOT * Long.BYTES));
+        slots = Math.min(slots, Integer.MAX_VALUE / LONGS_PER_SLOT + 1L);
+
+        this.table    = new long[(int)(slots * LONGS_PER_SLOT)];
+        this.slotMask = (int)slots - 1;
+    }
+
+    // Mix the depth into the index so each depth of a position gets its own slot
+    private int slotOf(long hash, int depth) {
+        return ((int)(hash >>> 32 ^ depth * 0x9E3779B9) & this.slotMask) * LONGS_PER_SLOT;
+    }
+
+    // Stored count, or -1 if absent
+    long probe(long hash, int depth) {
+
+        int  slot    = this.slotOf(hash, depth);
+        long checked = (long)SLOTS.getOpaque(this.table, slot);
+        long data    = (long)SLOTS.getOpaque(this.table, slot + 1);
+
+        if ((checked ^ data) == hash && (data & DEPTH_MASK) == depth && data != 0)
+            return data >>> DEPTH_BITS;
+        return -1;
+    }
+
+    // Always replace
+    void store(long hash, int depth, long nodes) {
+
+        int  slot = this.slotOf(hash, depth);
+        long data = nodes << DEPTH_BITS | depth;
+
+        SLOTS.setOpaque(this.table, slot,     hash ^ data);
+        SLOTS.setOpaque(this.table, slot + 1, data);
+    }
+}
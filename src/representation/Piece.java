@@ -1,90 +1,76 @@
 package representation;
 
-class Piece {
+public class Piece {
 
     // Distinguish the piece colors and piece types
-    static final int NONE   = -1;
-    static final int BLACK  = 0;
-    static final int WHITE  = 1;
-    static final int KING   = 2;
-    static final int KNIGHT = 3;
-    static final int ROOK   = 4;
-    static final int BISHOP = 5;
-    static final int QUEEN  = 6;
-    static final int PAWN   = 7;
-
-    // Bitboard helper methods
-    private static Bitboard[][][] allocateBitboards() {
-        return new Bitboard[2][8 + 'A'][8 + 1];
+    public static final int NONE   = -1;
+    public static final int BLACK  = 0;
+    public static final int WHITE  = 1;
+    public static final int KING   = 2;
+    public static final int KNIGHT = 3;
+    public static final int ROOK   = 4;
+    public static final int BISHOP = 5;
+    public static final int QUEEN  = 6;
+    public static final int PAWN   = 7;
+
+    // Board helper methods
+    private static long[][] allocateBoards() {
+        return new long[2][64];
     }
 
-    private static Bitboard[][][][] allocateMoves() {
-        return new Bitboard[8][][][];
+    private static long[][][] allocateMoves() {
+        return new long[8][][];
     }
 
-    private static void applyColorNeutral(Bitboard[][][] boards) {
-        boards[BLACK] = boards[WHITE].clone();
+    private static void applyColorNeutral(long[][] boards) {
+        boards[BLACK] = boards[WHITE];
     }
 
-    private static Bitboard[][][] combinePawnBitboards(Bitboard[][][] whiteBoard, Bitboard[][][] blackBoard) {
+    private static long[][] combinePawnBoards(long[][] whiteBoard, long[][] blackBoard) {
         whiteBoard[BLACK] = blackBoard[BLACK];
         return whiteBoard;
     }
 
-    // Bitboard generating methods
-    private static Bitboard[][][] generateJumpingBoards(int[] dFile, int[] dRank) {
+    // Bounds check on zero-based file and rank
+    private static boolean isOnBoard(int file, int rank) {
+        return 0 <= file && file < 8 && 0 <= rank && rank < 8;
+    }
+
+    // Board generating methods
+    private static long[][] generateJumpingBoards(int[] dFile, int[] dRank) {
 
         // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
+        long[][] boards = allocateBoards();
 
         // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++)
-            for (int rank = 1; rank <= 8; rank++) {
+        for (int square = 0; square < 64; square++) {
 
-                // Create new bitboard
-                Bitboard board = new Bitboard();
+            int file = square & 7;
+            int rank = square >>> 3;
 
-                // Span all jump moves
-                for (int index = 0; index < dFile.length; index++)
-                    if (Bitboard.isFileRankInBounds((char)(file + dFile[index]), rank + dRank[index]))
-                        board.setBit((char)(file + dFile[index]), rank + dRank[index], true);
-
-                // Store the board in the right spot
-                boards[WHITE][file][rank] = board;
-            }
+            // Span all jump moves
+            for (int index = 0; index < dFile.length; index++)
+                if (isOnBoard(file + dFile[index], rank + dRank[index]))
+                    boards[WHITE][square] |= Bitboard.bit(file + dFile[index] + (rank + dRank[index]) * 8);
+        }
 
         // Copy the color-neutral board
         applyColorNeutral(boards);
         return boards;
     }
 
-    private static Bitboard[][][] generateSlidingBoards(int[] dFile, int[] dRank) {
+    private static long[][] generateSlidingBoards(int type) {
 
         // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
-
-        // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++)
-            for (int rank = 1; rank <= 8; rank++) {
-
-                // Create new bitboard
-                Bitboard board = new Bitboard();
-
-                // Span all slide moves
-                for (int index = 0; index < dFile.length; index++)
-
-                    // Span all depths of sliding
-                    for (int depth = 1; true; depth++) {
-
-                        if (!Bitboard.isFileRankInBounds((char)(file + dFile[index] * depth),
-                                                                rank + dRank[index] * depth))
-                            break;
-
-                        board.setBit((char)(file + dFile[index] * depth), rank + dRank[index] * depth, true);
-                    }
-                // Store the board in the right spot
-                boards[WHITE][file][rank] = board;
-            }
+        long[][] boards = allocateBoards();
+
+        // Empty board rays come straight out of the magic tables
+        for (int square = 0; square < 64; square++) {
+            if (type == ROOK || type == QUEEN)
+                boards[WHITE][square] |= Magic.rookAttacks(square, 0L);
+            if (type == BISHOP || type == QUEEN)
+                boards[WHITE][square] |= Magic.bishopAttacks(square, 0L);
+        }
 
         // Copy the color-neutral board
         applyColorNeutral(boards);
@@ -92,153 +78,69 @@ class Piece {
     }
 
     // Pawn generating methods
-    private static Bitboard[][][] generateWhitePawnCaptures() {
-
-        // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
-
-        // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++)
-            for (int rank = 2; rank <= 7; rank++) {
-
-                // Create new bitboard
-                Bitboard board = new Bitboard();
-
-                // Check capture left
-                if (Bitboard.isFileRankInBounds((char)(file - 1), rank + 1))
-                    board.setBit((char)(file - 1), rank + 1, true);
-
-                // Check capture right
-                if (Bitboard.isFileRankInBounds((char)(file + 1), rank + 1))
-                    board.setBit((char)(file + 1), rank + 1, true);
-
-                // Store the board in the right spot
-                boards[WHITE][file][rank] = board;
-            }
-        return boards;
-    }
-
-    private static Bitboard[][][] generateBlackPawnCaptures() {
-
-        // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
-
-        // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++)
-            for (int rank = 2; rank <= 7; rank++) {
-
-                // Create new bitboard
-                Bitboard board = new Bitboard();
-
-                // Check capture left
-                if (Bitboard.isFileRankInBounds((char)(file - 1), rank - 1))
-                    board.setBit((char)(file - 1), rank - 1, true);
-
-                // Check capture right
-                if (Bitboard.isFileRankInBounds((char)(file + 1), rank - 1))
-                    board.setBit((char)(file + 1), rank - 1, true);
-
-                // Store the board in the right spot
-                boards[BLACK][file][rank] = board;
-            }
-        return boards;
-    }
-
-    private static Bitboard[][][] generateWhitePawnQuiets() {
+    private static long[][] generatePawnCaptures(int color, int dRank) {
 
         // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
-
-        // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++) {
-
-            // Starting rank
-            int rank = 2;
+        long[][] boards = allocateBoards();
 
-            // Create new bitboard
-            Bitboard board = new Bitboard();
+        // Span all squares, the back ranks are needed for reverse attack lookups
+        for (int square = 0; square < 64; square++) {
 
-            // The elusive double thrust
-            board.setBit(file, rank + 1, true);
-            board.setBit(file, rank + 2, true);
+            int file = square & 7;
+            int rank = square >>> 3;
 
-            // Store the board in the right spot
-            boards[WHITE][file][rank] = board;
+            // Check capture left
+            if (isOnBoard(file - 1, rank + dRank))
+                boards[color][square] |= Bitboard.bit(file - 1 + (rank + dRank) * 8);
 
-            // Non-starting rank
-            for (rank = 3; rank <= 7; rank++) {
-
-                // Create new bitboard
-                board = new Bitboard();
-
-                // Add move forward
-                board.setBit(file, rank + 1, true);
-
-                // Store the board in the right spot
-                boards[WHITE][file][rank] = board;
-            }
+            // Check capture right
+            if (isOnBoard(file + 1, rank + dRank))
+                boards[color][square] |= Bitboard.bit(file + 1 + (rank + dRank) * 8);
         }
         return boards;
     }
 
-    private static Bitboard[][][] generateBlackPawnQuiets() {
+    private static long[][] generatePawnQuiets(int color, int dRank, int startRank) {
 
         // Allocate the board arrays
-        Bitboard[][][] boards = allocateBitboards();
+        long[][] boards = allocateBoards();
 
-        // Span all starting squares
-        for (char file = 'A'; file <= 'H'; file++) {
+        // Span all starting squares, pawns never stand on the back ranks
+        for (int square = 8; square < 56; square++) {
 
-            // Starting rank
-            int rank = 7;
+            int rank = square >>> 3;
 
-            // Create new bitboard
-            Bitboard board = new Bitboard();
+            // Add move forward
+            boards[color][square] = Bitboard.bit(square + dRank * 8);
 
             // The elusive double thrust
-            board.setBit(file, rank - 1, true);
-            board.setBit(file, rank - 2, true);
-
-            // Store the board in the right spot
-            boards[BLACK][file][rank] = board;
-
-            // Non-starting rank
-            for (rank = 2; rank <= 6; rank++) {
-
-                // Create new bitboard
-                board = new Bitboard();
-
-                // Add move forward
-                board.setBit(file, rank - 1, true);
-
-                // Store the board in the right spot
-                boards[BLACK][file][rank] = board;
-            }
+            if (rank == startRank)
+                boards[color][square] |= Bitboard.bit(square + dRank * 16);
         }
         return boards;
     }
 
     // Pawn specific generations
-    private static Bitboard[][][] generatePawnCaptures() {
+    private static long[][] generatePawnCaptures() {
 
         // Extract each color
-        Bitboard[][][] whiteMoves = generateWhitePawnCaptures();
-        Bitboard[][][] blackMoves = generateBlackPawnCaptures();
+        long[][] whiteMoves = generatePawnCaptures(WHITE, +1);
+        long[][] blackMoves = generatePawnCaptures(BLACK, -1);
 
-        return combinePawnBitboards(whiteMoves, blackMoves);
+        return combinePawnBoards(whiteMoves, blackMoves);
     }
 
-    private static Bitboard[][][] generatePawnQuiets() {
+    private static long[][] generatePawnQuiets() {
 
         // Extract each color
-        Bitboard[][][] whiteMoves = generateWhitePawnQuiets();
-        Bitboard[][][] blackMoves = generateBlackPawnQuiets();
+        long[][] whiteMoves = generatePawnQuiets(WHITE, +1, 1);
+        long[][] blackMoves = generatePawnQuiets(BLACK, -1, 6);
 
-        return combinePawnBitboards(whiteMoves, blackMoves);
+        return combinePawnBoards(whiteMoves, blackMoves);
     }
 
     // Piece specific generations
-    private static Bitboard[][][] generateKnightMoves() {
+    private static long[][] generateKnightMoves() {
 
         // Construct all knight moves
         int[] dFile = {+1, -1, -2, -2, -1, +1, +2, +2};
@@ -247,7 +149,7 @@ class Piece {
         return generateJumpingBoards(dFile, dRank);
     }
 
-    private static Bitboard[][][] generateKingMoves() {
+    private static long[][] generateKingMoves() {
 
         // Construct all king moves
         int[] dFile = {+1, +1, +0, -1, -1, -1, +0, +1};
@@ -256,37 +158,28 @@ class Piece {
         return generateJumpingBoards(dFile, dRank);
     }
 
-    private static Bitboard[][][] generateRookMoves() {
+    private static long[][] generateRookMoves() {
 
         // Construct all rook moves
-        int[] dFile = {+1, +0, -1, +0};
-        int[] dRank = {+0, +1, +0, -1};
-
-        return generateSlidingBoards(dFile, dRank);
+        return generateSlidingBoards(ROOK);
     }
 
-    private static Bitboard[][][] generateBishopMoves() {
+    private static long[][] generateBishopMoves() {
 
         // Construct all bishop moves
-        int[] dFile = {+1, +1, -1, -1};
-        int[] dRank = {+1, -1, +1, -1};
-
-        return generateSlidingBoards(dFile, dRank);
+        return generateSlidingBoards(BISHOP);
     }
 
-    private static Bitboard[][][] generateQueenMoves() {
+    private static long[][] generateQueenMoves() {
 
         // Construct all queen moves
-        int[] dFile = {+1, +0, -1, +0, +1, +1, -1, -1};
-        int[] dRank = {+0, +1, +0, -1, +1, -1, +1, -1};
-
-        return generateSlidingBoards(dFile, dRank);
+        return generateSlidingBoards(QUEEN);
     }
 
-    static Bitboard[][][][] getCaptureMoves() {
+    static long[][][] getCaptureMoves() {
 
         // Allocate moves
-        Bitboard[][][][] moves = allocateMoves();
+        long[][][] moves = allocateMoves();
 
         // Populate the array
         moves[KNIGHT] = generateKnightMoves();
@@ -299,10 +192,10 @@ class Piece {
         return moves;
     }
 
-    static Bitboard[][][][] getQuietMoves() {
+    static long[][][] getQuietMoves() {
 
         // Allocate moves
-        Bitboard[][][][] moves = allocateMoves();
+        long[][][] moves = allocateMoves();
 
         // Populate the array
         moves[KNIGHT] = generateKnightMoves();
@@ -319,11 +212,11 @@ class Piece {
     public static void main(String[] args) {
 
         // Create all types of moves
-        Bitboard[][][][] captureMoves = getCaptureMoves();
-        Bitboard[][][][] quietMoves   = getQuietMoves();
+        long[][][] captureMoves = getCaptureMoves();
+        long[][][] quietMoves   = getQuietMoves();
 
         // Let's focus on E4
-        Bitboard knightBoard = captureMoves[KNIGHT][WHITE]['E'][4];
+        Bitboard knightBoard = new Bitboard(captureMoves[KNIGHT][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         Bitboard board = new Bitboard();
         board.setBit('C', 3, true);
         board.setBit('C', 5, true);
@@ -338,7 +231,7 @@ class Piece {
             throw new UnitTestException("Knight move generation is bad.");
 
         // Let's focus on B1
-        knightBoard = captureMoves[KNIGHT][BLACK]['B'][1];
+        knightBoard = new Bitboard(captureMoves[KNIGHT][BLACK][Bitboard.indexFromFileRank('B', 1)]);
         board = new Bitboard();
         board.setBit('A', 3, true);
         board.setBit('C', 3, true);
@@ -349,7 +242,7 @@ class Piece {
 
         // Create king moves
         // Let's focus on E4
-        Bitboard kingBoard = captureMoves[KING][WHITE]['E'][4];
+        Bitboard kingBoard = new Bitboard(captureMoves[KING][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('D', 3, true);
         board.setBit('D', 4, true);
@@ -364,7 +257,7 @@ class Piece {
             throw new UnitTestException("King move generation is bad.");
 
         // Let's focus on H8
-        kingBoard = captureMoves[KING][BLACK]['H'][8];
+        kingBoard = new Bitboard(captureMoves[KING][BLACK][Bitboard.indexFromFileRank('H', 8)]);
         board = new Bitboard();
         board.setBit('G', 8, true);
         board.setBit('G', 7, true);
@@ -375,7 +268,7 @@ class Piece {
 
         // Create rook moves
         // Let's focus on E4
-        Bitboard rookBoard = captureMoves[ROOK][WHITE]['E'][4];
+        Bitboard rookBoard = new Bitboard(captureMoves[ROOK][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('E', 1, true);
         board.setBit('E', 2, true);
@@ -397,7 +290,7 @@ class Piece {
 
         // Create bishop moves
         // Let's focus on E4
-        Bitboard bishopBoard = captureMoves[BISHOP][BLACK]['E'][4];
+        Bitboard bishopBoard = new Bitboard(captureMoves[BISHOP][BLACK][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('D', 3, true);
         board.setBit('C', 2, true);
@@ -418,7 +311,7 @@ class Piece {
 
         // Create queen moves
         // Let's focus on E4
-        Bitboard queenBoard = captureMoves[QUEEN][WHITE]['E'][4];
+        Bitboard queenBoard = new Bitboard(captureMoves[QUEEN][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('E', 1, true);
         board.setBit('E', 2, true);
@@ -453,7 +346,7 @@ class Piece {
 
         // Create pawn captures
         // Let's focus on white E4
-        Bitboard pawnBoard = captureMoves[PAWN][WHITE]['E'][4];
+        Bitboard pawnBoard = new Bitboard(captureMoves[PAWN][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('D', 5, true);
         board.setBit('F', 5, true);
@@ -462,7 +355,7 @@ class Piece {
             throw new UnitTestException("White pawn capture move generation is bad.");
 
         // Let's focus on white H7
-        pawnBoard = captureMoves[PAWN][WHITE]['H'][7];
+        pawnBoard = new Bitboard(captureMoves[PAWN][WHITE][Bitboard.indexFromFileRank('H', 7)]);
         board = new Bitboard();
         board.setBit('G', 8, true);
 
@@ -470,7 +363,7 @@ class Piece {
             throw new UnitTestException("White pawn capture move generation is bad.");
 
         // Let's focus on black H7
-        pawnBoard = captureMoves[PAWN][BLACK]['H'][7];
+        pawnBoard = new Bitboard(captureMoves[PAWN][BLACK][Bitboard.indexFromFileRank('H', 7)]);
         board = new Bitboard();
         board.setBit('G', 6, true);
 
@@ -478,7 +371,7 @@ class Piece {
             throw new UnitTestException("Black pawn capture move generation is bad.");
 
         // Let's focus on black C2
-        pawnBoard = captureMoves[PAWN][BLACK]['C'][2];
+        pawnBoard = new Bitboard(captureMoves[PAWN][BLACK][Bitboard.indexFromFileRank('C', 2)]);
         board = new Bitboard();
         board.setBit('B', 1, true);
         board.setBit('D', 1, true);
@@ -488,7 +381,7 @@ class Piece {
 
         // Create pawn quiets
         // Let's focus on white E4
-        pawnBoard = quietMoves[PAWN][WHITE]['E'][4];
+        pawnBoard = new Bitboard(quietMoves[PAWN][WHITE][Bitboard.indexFromFileRank('E', 4)]);
         board = new Bitboard();
         board.setBit('E', 5, true);
 
@@ -496,7 +389,7 @@ class Piece {
             throw new UnitTestException("White pawn quiet move generation is bad.");
 
         // Let's focus on white H2
-        pawnBoard = quietMoves[PAWN][WHITE]['H'][2];
+        pawnBoard = new Bitboard(quietMoves[PAWN][WHITE][Bitboard.indexFromFileRank('H', 2)]);
         board = new Bitboard();
         board.setBit('H', 3, true);
         board.setBit('H', 4, true);
@@ -505,7 +398,7 @@ class Piece {
             throw new UnitTestException("White pawn quiet move generation is bad.");
 
         // Let's focus on black B3
-        pawnBoard = quietMoves[PAWN][BLACK]['B'][3];
+        pawnBoard = new Bitboard(quietMoves[PAWN][BLACK][Bitboard.indexFromFileRank('B', 3)]);
         board = new Bitboard();
         board.setBit('B', 2, true);
 
@@ -513,7 +406,7 @@ class Piece {
             throw new UnitTestException("Black pawn quiet move generation is bad.");
 
         // Let's focus on black D7
-        pawnBoard = quietMoves[PAWN][BLACK]['D'][7];
+        pawnBoard = new Bitboard(quietMoves[PAWN][BLACK][Bitboard.indexFromFileRank('D', 7)]);
         board = new Bitboard();
         board.setBit('D', 6, true);
         board.setBit('D', 5, true);
@@ -0,0 +1,255 @@
+package representation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class PositionReader implements Closeable {
+
+    // Reads files in the layout PositionWriter describes. The file is mapped a window at a time,
+    // a single mapping being limited to 2 GB, and each record is decoded straight from the
+    // mapping into the caller's board, so nothing is allocated per position.
+
+    // Default window size, a whole number of records
+    private static final long WINDOW = (1L << 30) / Chessboard.RECORD_SIZE * Chessboard.RECORD_SIZE;
+
+    // Attributes
+    private FileChannel      channel;
+    private long             count;
+    private long             windowRecords;
+    private MappedByteBuffer window;
+    private long             windowStart;
+    private long             next;
+
+    // Constructor
+    public PositionReader(Path path) throws IOException {
+        this(path, WINDOW);
+    }
+
+    // Constructor with a window size, small ones being only for testing
+    PositionReader(Path path, long windowBytes) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PositionWriter.HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && this.channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < PositionWriter.HEADER || header.getInt() != PositionWriter.MAGIC)
+                throw new IOException(path + " is not a position file.");
+            int version = header.getInt();
+            if (version != PositionWriter.VERSION)
+                throw new IOException(path + " has version " + version + ", expected " + PositionWriter.VERSION + ".");
+            if (header.getInt() != Chessboard.RECORD_SIZE)
+                throw new IOException(path + " has records of the wrong size.");
+
+            long bytes = this.channel.size() - PositionWriter.HEADER;
+            if (bytes % Chessboard.RECORD_SIZE != 0)
+                throw new IOException(path + " ends in the middle of a record.");
+            this.count         = bytes / Chessboard.RECORD_SIZE;
+            this.windowRecords = Math.max(1, windowBytes / Chessboard.RECORD_SIZE);
+            this.windowStart   = -1;
+        } catch (IOException exception) {
+            this.channel.close();
+            throw exception;
+        }
+    }
+
+    // Number of positions in the file
+    public long size() {
+        return this.count;
+    }
+
+    // Index of the position the next call to next loads
+    public long position() {
+        return this.next;
+    }
+
+    // Continue from a given position, so workers can each take a slice of the file
+    public void seek(long index) {
+
+        if (index < 0 || index > this.count)
+            throw new IllegalArgumentException("Position " + index + " is outside 0.." + this.count + ".");
+        this.next = index;
+    }
+
+    // Load the next position into the board, false once the file is exhausted. A corrupt record
+    // throws IllegalArgumentException and is skipped, so the caller can go on with the next one.
+    public boolean next(Chessboard board) throws IOException {
+
+        if (this.next >= this.count)
+            return false;
+
+        long offset = this.next - this.windowStart;
+        if (this.windowStart < 0 || offset < 0 || offset >= this.windowRecords) {
+            this.map(this.next);
+            offset = 0;
+        }
+        this.window.position((int)(offset * Chessboard.RECORD_SIZE));
+        this.next++;
+        board.loadRecord(this.window);
+        return true;
+    }
+
+    private void map(long first) throws IOException {
+
+        long records = Math.min(this.windowRecords, this.count - first);
+        this.window  = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                PositionWriter.HEADER + first * Chessboard.RECORD_SIZE, records * Chessboard.RECORD_SIZE);
+        this.window.order(ByteOrder.LITTLE_ENDIAN);
+        this.windowStart = first;
+    }
+
+    // Mappings are released by the garbage collector, closing only gives back the file
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        this.channel.close();
+    }
+
+    // Unit testing and benchmarking
+    //   no arguments : check positions round trip through a file
+    //   <positions>  : write that many positions from random games and time reading them back
+    public static void main(String[] args) throws IOException {
+
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 3_000;
+        Path path = Files.createTempFile("positions", ".bin");
+        try {
+
+            // Positions from random games, with their FENs and keys to compare against
+            String[]   fens   = new String[positions];
+            long[]     hashes = new long[positions];
+            Chessboard board  = new Chessboard();
+            Random     random = new Random(5);
+            int[]      moves  = new int[Chessboard.MAX_MOVES];
+            long start = System.nanoTime();
+            try (PositionWriter writer = new PositionWriter(path)) {
+                for (int index = 0; index < positions; index++) {
+                    int count = board.generateMoves(moves);
+                    if (count == 0 || index % 200 == 0)
+                        board.loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+                    else
+                        board.makeMove(moves[random.nextInt(count)]);
+                    if (args.length == 0) {
+                        fens[index]   = board.toFen();
+                        hashes[index] = board.getHash();
+                    }
+                    writer.write(board);
+                }
+                if (writer.getCount() != positions)
+                    throw new UnitTestException("Written count is bad.");
+            }
+            long written = System.nanoTime() - start;
+
+            if (args.length > 0) {
+                start = System.nanoTime();
+                long sum = 0;
+                try (PositionReader reader = new PositionReader(path)) {
+                    while (reader.next(board))
+                        sum += board.getHash();
+                }
+                long read = System.nanoTime() - start;
+                System.out.printf("%,d positions, %,d bytes: written in %,d ms, read in %,d ms, %,d positions/s (%x)%n",
+                        positions, Files.size(path), written / 1_000_000, read / 1_000_000,
+                        positions * 1_000_000_000L / Math.max(1, read), sum);
+                return;
+            }
+
+            // Everything comes back in order, including across windows smaller than the file
+            for (long windowBytes : new long[] {WINDOW, 7 * Chessboard.RECORD_SIZE, 1}) {
+                try (PositionReader reader = new PositionReader(path, windowBytes)) {
+                    if (reader.size() != positions)
+                        throw new UnitTestException("Read count is bad.");
+                    int index = 0;
+                    while (reader.next(board)) {
+                        if (!board.toFen().equals(fens[index]) || board.getHash() != hashes[index])
+                            throw new UnitTestException("Position " + index + " is bad: " + board.toFen());
+                        index++;
+                    }
+                    if (index != positions)
+                        throw new UnitTestException("Read stopped early.");
+
+                    // Seeking back lands on the right record
+                    reader.seek(positions / 2);
+                    if (!reader.next(board) || !board.toFen().equals(fens[positions / 2]))
+                        throw new UnitTestException("Seek is bad.");
+                }
+            }
+
+            // Truncated files and other formats are refused
+            Files.write(path, new byte[3], StandardOpenOption.APPEND);
+            if (isReadable(path))
+                throw new UnitTestException("Truncated file was read.");
+            Files.write(path, "not positions at all".getBytes());
+            if (isReadable(path))
+                throw new UnitTestException("Unknown file was read.");
+
+            // Corrupt records fail and leave the board as it was: overlapping boards, an en passant
+            // square on the wrong rank, with no pawn in front or taken, the side not to move in check,
+            // castling rights with the king and rooks away
+            board.loadFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+            String before = board.toFen();
+            long   key    = board.getHash();
+            String[] corrupt  = {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                                 "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                                 "4k3/8/8/8/8/8/8/4K3 w - - 0 1",
+                                 "4k3/4R3/8/8/8/8/8/4K3 b - - 0 1",
+                                 "4k3/8/3n4/3pP3/8/8/8/4K3 w - - 0 1",
+                                 "4k3/8/8/8/8/8/8/4K3 w - - 0 1"};
+            long[]   counters = {-1L, 1L << 32 | 20 << 4, 1L << 32 | 44 << 4, 1L << 32, 1L << 32 | 43 << 4,
+                                 1L << 32 | SpecialFlags.ALL_CASTLES};
+            ByteBuffer record = ByteBuffer.allocate(Chessboard.RECORD_SIZE);
+            for (int index = 0; index < corrupt.length; index++) {
+                Chessboard.fromFen(corrupt[index]).toRecord(record.clear());
+                record.putLong(index == 0 ? Piece.PAWN * Long.BYTES : 8 * Long.BYTES, counters[index]).flip();
+                try {
+                    board.loadRecord(record);
+                    throw new UnitTestException("Corrupt record " + index + " was loaded.");
+                } catch (IllegalArgumentException exception) {
+                }
+                if (!board.toFen().equals(before) || board.getHash() != key || board.getHash() != board.computeHash())
+                    throw new UnitTestException("Corrupt record " + index + " changed the board.");
+            }
+
+            // Reading goes on past a corrupt record in a file
+            try (PositionWriter writer = new PositionWriter(path)) {
+                for (String fen : corrupt)
+                    writer.write(Chessboard.fromFen(fen));
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, -1L),
+                        PositionWriter.HEADER + Chessboard.RECORD_SIZE + Piece.PAWN * Long.BYTES);
+            }
+            try (PositionReader reader = new PositionReader(path)) {
+                boolean isSkipped = false;
+                if (!reader.next(board))
+                    throw new UnitTestException("First record was not read.");
+                try {
+                    reader.next(board);
+                } catch (IllegalArgumentException exception) {
+                    isSkipped = true;
+                }
+                if (!isSkipped || reader.position() != 2 || !reader.next(board) || !board.toFen().equals(corrupt[2]))
+                    throw new UnitTestException("Reading did not go on past a corrupt record.");
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static boolean isReadable(Path path) {
+
+        try {
+            new PositionReader(path).close();
+            return true;
+        } catch (IOException exception) {
+            return false;
+        }
+    }
+}
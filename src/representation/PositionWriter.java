@@ -0,0 +1,68 @@
+package representation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class PositionWriter implements Closeable {
+
+    // File layout, little-endian throughout:
+    //   int magic, int version, int record size, int reserved
+    //   records of Chessboard.RECORD_SIZE bytes, one per position, as many as the file holds
+    static final int MAGIC   = 0x534F5042; // "BPOS"
+    static final int VERSION = 1;
+    static final int HEADER  = 4 * Integer.BYTES;
+
+    // Records gathered before each write to the file
+    private static final int BATCH = 4096;
+
+    // Attributes
+    private FileChannel channel;
+    private ByteBuffer  buffer;
+    private long        count;
+
+    // Constructor, replacing whatever the file held
+    public PositionWriter(Path path) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer  = ByteBuffer.allocateDirect(BATCH * Chessboard.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.putInt(MAGIC).putInt(VERSION).putInt(Chessboard.RECORD_SIZE).putInt(0);
+    }
+
+    // Append the position, without its move history
+    public void write(Chessboard board) throws IOException {
+
+        if (this.buffer.remaining() < Chessboard.RECORD_SIZE)
+            this.flush();
+        board.toRecord(this.buffer);
+        this.count++;
+    }
+
+    // Number of positions written so far
+    public long getCount() {
+        return this.count;
+    }
+
+    private void flush() throws IOException {
+
+        this.buffer.flip();
+        while (this.buffer.hasRemaining())
+            this.channel.write(this.buffer);
+        this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
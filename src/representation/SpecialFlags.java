@@ -1,121 +1,104 @@
 package representation;
 
-class SpecialFlags {
-
-    private static final int  ONE  = 0x01;
-    private static final byte ZERO = 0x00;
-
-    // Attributes
-    private byte enPassantData;
-    private boolean whiteShort;
-    private boolean whiteLong;
-    private boolean blackShort;
-    private boolean blackLong;
+import java.util.Arrays;
 
-    // Default constructor
-    SpecialFlags() {
+class SpecialFlags {
 
-        this.lowerEnPassant();
-        this.whiteShort = true;
-        this.whiteLong  = true;
-        this.blackShort = true;
-        this.blackLong  = true;
+    // Castling rights and the en passant square, packed into the one int the board holds
+    //   bits 0-3 : white short, white long, black short, black long
+    //   bits 4-9 : en passant target square, zero if none since A1 can never be one
+    // Taking a move back restores the whole int from the undo stack.
+    static final int WHITE_SHORT = 0x1;
+    static final int WHITE_LONG  = 0x2;
+    static final int BLACK_SHORT = 0x4;
+    static final int BLACK_LONG  = 0x8;
+    static final int ALL_CASTLES = 0xF;
+
+    // Number of distinct packed values, for tables indexed by them
+    static final int SIZE = 1 << 10;
+
+    // Rights kept when a move leaves or lands on each square, every square but the king and
+    // rook homes keeping them all. Captures landing on a rook home lose that rook's right.
+    private static final int[] CASTLE_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLE_MASK, ALL_CASTLES);
+        CASTLE_MASK[4]  &= ~(WHITE_SHORT | WHITE_LONG);
+        CASTLE_MASK[0]  &= ~WHITE_LONG;
+        CASTLE_MASK[7]  &= ~WHITE_SHORT;
+        CASTLE_MASK[60] &= ~(BLACK_SHORT | BLACK_LONG);
+        CASTLE_MASK[56] &= ~BLACK_LONG;
+        CASTLE_MASK[63] &= ~BLACK_SHORT;
     }
 
-    // Cloning constructor
-    SpecialFlags(SpecialFlags flags) {
-
-        this.enPassantData = flags.enPassantData;
-        this.whiteShort    = flags.whiteShort;
-        this.whiteLong     = flags.whiteLong;
-        this.blackShort    = flags.blackShort;
-        this.blackLong     = flags.blackLong;
-    }
+    // King and rook homes, each losing the rights CASTLE_MASK takes from it
+    private static final int[] HOMES = {0, 4, 7, 56, 60, 63};
 
     // Getters
-    boolean canEnPassant(char file) {
-        return (this.enPassantData >> (file - 'A') & ONE) > 0;
+    static int     getCastlingRights(int flags)    { return flags & ALL_CASTLES; }
+    static boolean canCastle(int flags, int right) { return (flags & right) != 0; }
+    static int     getEnPassantSquare(int flags)   { return flags >>> 4; }
+
+    // Setters, returning the new flags
+    static int withCastle(int flags, int right)     { return flags | right; }
+    static int withEnPassant(int flags, int square) { return flags & ALL_CASTLES | square << 4; }
+
+    // Flags after a move between two squares: the en passant square gone, and any right
+    // whose king or rook was touched
+    static int afterMove(int flags, int from, int to) {
+        return flags & CASTLE_MASK[from] & CASTLE_MASK[to];
     }
 
-    boolean canWhiteShort() { return this.whiteShort; }
-    boolean canWhiteLong()  { return this.whiteLong; }
-    boolean canBlackShort() { return this.blackShort; }
-    boolean canBlackLong()  { return this.blackLong; }
+    // Flags keeping only the rights whose king and rook are on their home squares, given
+    // the squares of HOMES that hold the right piece of the right color
+    static int withPiecesHome(int flags, long homes) {
 
-    // Setters
-    void raiseEnPassant(char file) {
-        this.enPassantData |= ONE << (file - 'A');
+        for (int square : HOMES)
+            if ((homes & 1L << square) == 0)
+                flags &= CASTLE_MASK[square] | ~ALL_CASTLES;
+        return flags;
     }
 
-    void lowerEnPassant()  { this.enPassantData = ZERO; }
-    void lowerWhiteShort() { this.whiteShort = false; }
-    void lowerWhiteLong()  { this.whiteLong  = false; }
-    void lowerBlackShort() { this.blackShort = false; }
-    void lowerBlackLong()  { this.blackLong  = false; }
-
-    // Compound setters
-    void lowerWhiteCastles() { this.lowerWhiteShort(); this.lowerWhiteLong(); }
-    void lowerBlackCastles() { this.lowerBlackShort(); this.lowerBlackLong(); }
-
     // Unit testing
     public static void main(String[] args) {
 
-        // Create new object
-        SpecialFlags flags = new SpecialFlags();
-
-        // Ensure no enpassant
-        for (char file = 'A'; file <= 'H'; file++)
-            if (flags.canEnPassant(file))
-                throw new UnitTestException("Constructor is wrong.");
-
-        // Ensure all castles
-        if (!flags.canWhiteShort())
-            throw new UnitTestException("Constructor is wrong.");
-        if (!flags.canWhiteLong())
-            throw new UnitTestException("Constructor is wrong.");
-        if (!flags.canBlackShort())
-            throw new UnitTestException("Constructor is wrong.");
-        if (!flags.canBlackLong())
-            throw new UnitTestException("Constructor is wrong.");
-
-        // Check independence of en passant flags
-        for (char focusFile = 'A'; focusFile <= 'H'; focusFile++) {
-
-            // Raise flag
-            flags.raiseEnPassant(focusFile);
+        // Nothing set
+        if (getCastlingRights(0) != 0 || getEnPassantSquare(0) != 0)
+            throw new UnitTestException("Empty flags are wrong.");
+
+        // Castling rights are independent of each other
+        int[] rights = {WHITE_SHORT, WHITE_LONG, BLACK_SHORT, BLACK_LONG};
+        for (int right : rights) {
+            int flags = withCastle(0, right);
+            for (int other : rights)
+                if (canCastle(flags, other) != (other == right))
+                    throw new UnitTestException("Castling is wrong.");
+        }
 
-            // Check flag raised
-            if (!flags.canEnPassant(focusFile))
+        // En passant squares round trip and leave the rights alone
+        for (int square = 16; square < 48; square++) {
+            int flags = withEnPassant(ALL_CASTLES, square);
+            if (getEnPassantSquare(flags) != square || getCastlingRights(flags) != ALL_CASTLES)
                 throw new UnitTestException("EP is wrong.");
-
-            // Check lowered for all other flags
-            for (char otherFile = 'A'; otherFile <= 'H'; otherFile++) {
-
-                // Ignore focus flag
-                if (focusFile == otherFile)
-                    continue;
-
-                // Check flags lowered
-                if (flags.canEnPassant(otherFile))
-                    throw new UnitTestException("EP is wrong.");
-            }
-
-            // Lower the flags
-            flags.lowerEnPassant();
+            if (flags >= SIZE)
+                throw new UnitTestException("Packing is wrong.");
         }
 
-        // Check independence of castling rights
-        flags.lowerWhiteShort();
-        if (!flags.canWhiteLong() || !flags.canBlackShort() || !flags.canBlackLong())
-            throw new UnitTestException("Castling is wrong.");
-        flags.lowerWhiteLong();
-        if (!flags.canBlackShort() || !flags.canBlackLong())
-            throw new UnitTestException("Castling is wrong.");
-        flags.lowerBlackShort();
-        if (!flags.canBlackLong())
-            throw new UnitTestException("Castling is wrong.");
-        flags.lowerBlackLong();
-        if (flags.canWhiteShort() || flags.canWhiteLong() || flags.canBlackShort() || flags.canBlackLong())
-            throw new UnitTestException("Castling is wrong.");
+        // Moves clear en passant, and only touching a king or rook home loses rights
+        int flags = withEnPassant(ALL_CASTLES, 20);
+        if (afterMove(flags, 12, 28) != ALL_CASTLES)
+            throw new UnitTestException("Quiet move is wrong.");
+        if (afterMove(flags, 4, 5) != (BLACK_SHORT | BLACK_LONG))
+            throw new UnitTestException("King move is wrong.");
+        if (afterMove(flags, 7, 15) != (WHITE_LONG | BLACK_SHORT | BLACK_LONG))
+            throw new UnitTestException("Rook move is wrong.");
+        if (afterMove(flags, 49, 56) != (WHITE_SHORT | WHITE_LONG | BLACK_SHORT))
+            throw new UnitTestException("Rook capture is wrong.");
+
+        // Rights go with a missing king or rook, the en passant square stays
+        if (withPiecesHome(flags, 0x91L | 0x91L << 56) != flags)
+            throw new UnitTestException("Pieces home is wrong.");
+        if (withPiecesHome(flags, 0x81L | 0x11L << 56) != withEnPassant(BLACK_LONG, 20))
+            throw new UnitTestException("Pieces away is wrong.");
     }
 }
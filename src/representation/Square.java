@@ -3,29 +3,38 @@ package representation;
 class Square {
 
     // Attributes
-    private char file;
-    private int  rank;
-    private int  type;
-    private int  color;
+    private int index;
+    private int type;
+    private int color;
 
     // Getters
-    char getFile()  { return this.file; }
-    int  getRank()  { return this.rank; }
+    int  getIndex() { return this.index; }
+    char getFile()  { return Bitboard.fileOf(this.index); }
+    int  getRank()  { return Bitboard.rankOf(this.index); }
     int  getType()  { return this.type; }
     int  getColor() { return this.color; }
 
     // Constructor
-    Square(char file, int rank, int type, int color) {
+    Square(int index, int type, int color) {
 
-        this.file  = file;
-        this.rank  = rank;
+        this.index = index;
         this.type  = type;
         this.color = color;
     }
 
-    // Simpler constructor
+    // Simpler constructors
+    Square(int index) {
+
+        this(index, Piece.NONE, Piece.NONE);
+    }
+
+    Square(char file, int rank, int type, int color) {
+
+        this(Bitboard.indexFromFileRank(file, rank), type, color);
+    }
+
     Square(char file, int rank) {
 
         this(file, rank, Piece.NONE, Piece.NONE);
     }
-}
\ No newline at end of file
+}
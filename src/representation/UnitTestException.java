@@ -1,8 +1,10 @@
 package representation;
 
-class UnitTestException extends RuntimeException{
+public class UnitTestException extends RuntimeException{
 
-    UnitTestException(String message) {
+    private static final long serialVersionUID = 1L;
+
+    public UnitTestException(String message) {
         super(message);
     }
 }
@@ -0,0 +1,55 @@
+package representation;
+
+class Zobrist {
+
+    // https://www.chessprogramming.org/Zobrist_Hashing
+
+    // Fixed seed so keys, and thus any stored hashes, are identical on every run
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    // Keys for a piece of each color and type on each square, laid out like the boards
+    static final long[][][] PIECES = new long[2][8][64];
+
+    // Keys for black to move, each combination of castling rights and each en passant file
+    static final long   SIDE;
+    static final long[] CASTLING   = new long[16];
+    static final long[] EN_PASSANT = new long[8];
+
+    // Combined key of each packed SpecialFlags value, so the flags cost one lookup
+    static final long[] FLAGS      = new long[SpecialFlags.SIZE];
+
+    // PRNG state used while filling the tables
+    private static long state = SEED;
+
+    static {
+        for (int color = Piece.BLACK; color <= Piece.WHITE; color++)
+            for (int type = Piece.KING; type <= Piece.PAWN; type++)
+                for (int square = 0; square < 64; square++)
+                    PIECES[color][type][square] = nextRandom();
+
+        SIDE = nextRandom();
+
+        // Rights combine, so a combination's key is the XOR of its single rights
+        long[] rights = {nextRandom(), nextRandom(), nextRandom(), nextRandom()};
+        for (int index = 0; index < 16; index++)
+            for (int bit = 0; bit < 4; bit++)
+                if ((index >> bit & 1) > 0)
+                    CASTLING[index] ^= rights[bit];
+
+        for (int file = 0; file < 8; file++)
+            EN_PASSANT[file] = nextRandom();
+
+        for (int flags = 0; flags < SpecialFlags.SIZE; flags++) {
+            int square = SpecialFlags.getEnPassantSquare(flags);
+            FLAGS[flags] = CASTLING[SpecialFlags.getCastlingRights(flags)] ^ (square != 0 ? EN_PASSANT[square & 7] : 0L);
+        }
+    }
+
+    // xorshift64*
+    private static long nextRandom() {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+}
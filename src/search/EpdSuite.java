@@ -0,0 +1,329 @@
+package search;
+
+import representation.Chessboard;
+import representation.Move;
+import representation.UnitTestException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class EpdSuite {
+
+    // https://www.chessprogramming.org/Extended_Position_Description
+
+    // Runs a test suite of positions with bm (best move) and am (avoid move) operations. The
+    // file is read as the workers go, each with its own board and search, and every result is
+    // printed as soon as it is known. A position is solved when the move found is one of the bm
+    // moves and none of the am moves. A position that fails in any way is reported and skipped,
+    // the worker going on with the next one.
+
+    // Positions read ahead of the workers, per worker
+    private static final int READ_AHEAD = 4;
+
+    // Attributes
+    private int         workers;
+    private int         hashMegabytes;
+    private Limits      limits;
+    private PrintStream out;
+
+    // Totals of the last run
+    private int    positions;
+    private int    solved;
+    private long   nodes;
+    private long   milliseconds;
+    private long[] times = new long[0];
+
+    // Constructor
+    public EpdSuite(int workers, int hashMegabytes, Limits limits, PrintStream out) {
+
+        if (workers < 1)
+            throw new IllegalArgumentException("Worker count must be at least 1, got " + workers + ".");
+
+        this.workers       = workers;
+        this.hashMegabytes = hashMegabytes;
+        this.limits        = limits;
+        this.out           = out;
+    }
+
+    // Getters for the last run
+    public int  getPositions()    { return this.positions; }
+    public int  getSolved()       { return this.solved; }
+    public long getNodes()        { return this.nodes; }
+    public long getMilliseconds() { return this.milliseconds; }
+
+    // Time within which this percent of the positions were searched, nearest rank
+    public long getPercentile(int percent) {
+
+        if (this.times.length == 0)
+            return 0;
+        int rank = (int)Math.ceil(percent / 100.0 * this.times.length);
+        return this.times[Math.max(0, Math.min(this.times.length, rank) - 1)];
+    }
+
+    // Search every position in the input, blank lines and # comments aside
+    public void run(BufferedReader input) throws IOException, InterruptedException {
+
+        long start = System.nanoTime();
+        Worker[] pool = new Worker[this.workers];
+        BlockingQueue<Worker> idle = new ArrayBlockingQueue<>(this.workers);
+        for (int index = 0; index < pool.length; index++) {
+            pool[index] = new Worker();
+            idle.add(pool[index]);
+        }
+
+        // Every task gives back its permit and its worker however it ends, so reading can
+        // neither run far ahead of the workers nor wait on one that is gone
+        Semaphore       ahead    = new Semaphore(READ_AHEAD * this.workers);
+        ExecutorService executor = Executors.newFixedThreadPool(this.workers);
+        try {
+            int number = 0;
+            for (String line = input.readLine(); line != null; line = input.readLine()) {
+                number++;
+                if (line.isBlank() || line.trim().startsWith("#"))
+                    continue;
+
+                int    task = number;
+                String epd  = line;
+                ahead.acquire();
+                executor.execute(() -> {
+                    Worker worker = null;
+                    try {
+                        worker = idle.take();
+                        worker.solve(task, epd);
+                    } catch (IllegalArgumentException exception) {
+                        this.print(String.format("%5d skipped: %s", task, exception.getMessage()));
+                    } catch (RuntimeException exception) {
+                        this.print(String.format("%5d skipped: %s", task, exception));
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (worker != null)
+                            idle.add(worker);
+                        ahead.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        this.milliseconds = (System.nanoTime() - start) / 1_000_000;
+
+        // Totals over every worker
+        this.positions = 0;
+        this.solved    = 0;
+        this.nodes     = 0;
+        this.times     = new long[0];
+        for (Worker worker : pool) {
+            this.positions += worker.count;
+            this.solved    += worker.solved;
+            this.nodes     += worker.nodes;
+            int merged = this.times.length;
+            this.times = Arrays.copyOf(this.times, merged + worker.count);
+            System.arraycopy(worker.times, 0, this.times, merged, worker.count);
+        }
+        Arrays.sort(this.times);
+
+        this.print(String.format("Solved %d of %d, %,d nodes in %,d ms, %,d nps on %d workers",
+                this.solved, this.positions, this.nodes, this.milliseconds,
+                this.nodes * 1000 / Math.max(1, this.milliseconds), this.workers));
+        this.print(String.format("Time per position: p50 %,d ms, p90 %,d ms, p99 %,d ms, max %,d ms",
+                this.getPercentile(50), this.getPercentile(90), this.getPercentile(99), this.getPercentile(100)));
+    }
+
+    // Results come from every worker, a whole line at a time
+    private void print(String line) {
+        synchronized (this.out) {
+            this.out.println(line);
+            this.out.flush();
+        }
+    }
+
+    private class Worker {
+
+        // Attributes
+        private Chessboard board;
+        private Search     search;
+        private int[]      best;
+        private int[]      avoid;
+
+        // Totals, read once every task is done
+        private int    count;
+        private int    solved;
+        private long   nodes;
+        private long[] times;
+
+        private Worker() {
+
+            this.board  = new Chessboard();
+            this.search = new Search(EpdSuite.this.hashMegabytes);
+            this.best   = new int[Chessboard.MAX_MOVES];
+            this.avoid  = new int[Chessboard.MAX_MOVES];
+            this.times  = new long[64];
+        }
+
+        private void solve(int number, String line) {
+
+            // The position, then operations such as bm Qg6 Rxh7; id "WAC.001";
+            int    index     = this.board.loadFen(line, 0);
+            String id        = "";
+            String expected  = "";
+            int    bestCount = 0, avoidCount = 0;
+            for (String operation : operations(line, index)) {
+
+                String[] tokens = operation.trim().split("\\s+");
+                boolean  isBest = tokens[0].equals("bm");
+                if (tokens[0].equals("id"))
+                    id = unquote(operation.trim().substring(2).trim());
+                else if (isBest || tokens[0].equals("am")) {
+                    expected += (expected.isEmpty() ? "" : " ") + operation.trim();
+                    for (int i = 1; i < tokens.length; i++) {
+                        int move = this.board.parseSan(tokens[i]);
+                        if (move == Move.NONE)
+                            throw new IllegalArgumentException(tokens[0] + " " + tokens[i] + " is not a legal move here.");
+                        // Repeats are dropped, so the lists never outgrow the legal moves
+                        if (isBest && !contains(this.best, bestCount, move))
+                            this.best[bestCount++] = move;
+                        else if (!isBest && !contains(this.avoid, avoidCount, move))
+                            this.avoid[avoidCount++] = move;
+                    }
+                }
+            }
+            if (bestCount + avoidCount == 0)
+                throw new IllegalArgumentException("no bm or am operation in " + line);
+
+            // Each position is searched from scratch, so results do not depend on which worker got it
+            this.search.clear();
+            Result  result    = this.search.search(this.board, EpdSuite.this.limits);
+            int     found     = result.getBestMove();
+            boolean isSolved  = (bestCount == 0 || contains(this.best, bestCount, found))
+                             && !contains(this.avoid, avoidCount, found);
+
+            if (this.count == this.times.length)
+                this.times = Arrays.copyOf(this.times, 2 * this.count);
+            this.times[this.count++] = result.getMilliseconds();
+            this.nodes += result.getNodes();
+            if (isSolved)
+                this.solved++;
+
+            EpdSuite.this.print(String.format("%5d %-16s %-20s found %-6s %-6s depth %3d %,13d nodes %,8d ms",
+                    number, id, expected, found == Move.NONE ? "none" : Move.toString(found),
+                    isSolved ? "solved" : "failed", result.getDepth(), result.getNodes(), result.getMilliseconds()));
+        }
+    }
+
+    // Operations end at semicolons outside quoted strings, so id "a;b" stays whole
+    private static List<String> operations(String line, int start) {
+
+        List<String> operations = new ArrayList<>();
+        boolean isQuoted = false;
+        int     first    = start;
+        for (int index = start; index < line.length(); index++) {
+            char symbol = line.charAt(index);
+            if (symbol == '"')
+                isQuoted = !isQuoted;
+            else if (symbol == ';' && !isQuoted) {
+                operations.add(line.substring(first, index));
+                first = index + 1;
+            }
+        }
+        operations.add(line.substring(first));
+        return operations;
+    }
+
+    // A quoted string without its surrounding quotes, anything else as it is
+    private static String unquote(String value) {
+
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+        return value;
+    }
+
+    private static boolean contains(int[] moves, int count, int move) {
+
+        for (int i = 0; i < count; i++)
+            if (moves[i] == move)
+                return true;
+        return false;
+    }
+
+    // Unit testing and test suites
+    //   no arguments                                              : check a small built-in suite
+    //   <file> [milliseconds per position] [workers] [hash MB]   : run a suite from a file
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length > 0) {
+            long milliseconds = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+            int  workers      = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            int  hash         = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+            EpdSuite suite = new EpdSuite(workers, hash, new Limits(0, 0, milliseconds), System.out);
+            try (BufferedReader input = Files.newBufferedReader(Path.of(args[0]))) {
+                suite.run(input);
+            }
+            return;
+        }
+
+        String epd = String.join("\n",
+                "# Mates, tactics, a move to avoid and a best move that is not",
+                "6k1/5ppp/8/8/8/8/8/R5K1 w - - bm Ra8#; id \"back rank\";",
+                "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4 bm Qxf7#; id \"scholar\";",
+                "4k3/8/2q5/8/3N4/8/8/4K3 w - - bm Nxc6+; id \"free queen\";",
+                "",
+                "r3k3/8/8/3N4/8/8/8/4K3 w - - bm Nc7+; id \"fork;c7\";",
+                "4k3/8/8/3q4/8/8/8/3RK3 w - - am Kf1 Ke2; id \"avoid\";",
+                "4k3/8/8/3q4/8/8/8/3RK3 w - - bm Kf2; id \"wrong\";",
+                "not a position bm e4;",
+                "4k3/8/8/8/8/8/8/4K3 w - - bm e4; id \"illegal\";",
+                "4k3/8/8/8/8/8/8/4K3 w - - id \"nothing to check\";");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EpdSuite suite = new EpdSuite(3, 4, new Limits(6, 0, 0), new PrintStream(output, true));
+        if (suite.getPercentile(50) != 0)
+            throw new UnitTestException("Percentile before a run is wrong.");
+        suite.run(new BufferedReader(new StringReader(epd)));
+        String report = output.toString();
+
+        if (suite.getPositions() != 6 || suite.getSolved() != 5 || suite.getNodes() <= 0)
+            throw new UnitTestException("Suite totals are wrong: " + report);
+        for (String id : new String[] {"back rank", "scholar", "free queen", "fork;c7", "avoid"})
+            if (!report.contains(id) || !report.split(id)[1].split("\n")[0].contains("solved"))
+                throw new UnitTestException("Position " + id + " is wrong: " + report);
+        if (!report.split("wrong")[1].split("\n")[0].contains("failed") || report.split("skipped").length != 4)
+            throw new UnitTestException("Failures are wrong: " + report);
+        if (!report.contains("Solved 5 of 6") || suite.getPercentile(50) > suite.getPercentile(100))
+            throw new UnitTestException("Summary is wrong: " + report);
+
+        // A single worker goes on past a position it cannot search, and the run still ends
+        StringBuilder rest = new StringBuilder("4k3/4R3/8/8/8/8/8/4K3 w - - bm Rxe8;\n");
+        for (int line = 0; line < 12; line++)
+            rest.append("6k1/5ppp/8/8/8/8/8/R5K1 w - - bm Ra8#;\n");
+        output.reset();
+        EpdSuite single = new EpdSuite(1, 1, new Limits(2, 0, 0), new PrintStream(output, true));
+        Thread runner = new Thread(() -> {
+            try {
+                single.run(new BufferedReader(new StringReader(rest.toString())));
+            } catch (IOException | InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        runner.setDaemon(true);
+        runner.start();
+        runner.join(10_000);
+        if (runner.isAlive() || single.getSolved() != 12 || !output.toString().contains("    1 skipped"))
+            throw new UnitTestException("Run past a bad position is wrong: " + output);
+    }
+}
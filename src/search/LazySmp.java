@@ -0,0 +1,205 @@
+package search;
+
+import nnue.Network;
+import representation.Chessboard;
+import representation.Move;
+import representation.UnitTestException;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class LazySmp {
+
+    // https://www.chessprogramming.org/Lazy_SMP
+
+    // Every thread searches the same root on its own board and its own ordering tables,
+    // sharing only the transposition table. Helpers skip iterations and shuffle their root
+    // quiets, so they fill the table with lines the main thread reaches next.
+
+    // Attributes
+    private TranspositionTable table;
+    private Search[]           searchers;
+    private Consumer<Result>   listener;
+    private Network            network;
+
+    // Constructor
+    public LazySmp(int threads, int hashMegabytes) {
+
+        this.table = new TranspositionTable(hashMegabytes);
+        this.setThreads(threads);
+    }
+
+    // Number of threads, the main one included. Learned ordering is kept for threads that remain.
+    public void setThreads(int threads) {
+
+        if (threads < 1)
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threads + ".");
+
+        Search[] searchers = new Search[threads];
+        for (int index = 0; index < threads; index++)
+            searchers[index] = this.searchers != null && index < this.searchers.length
+                             ? this.searchers[index]
+                             : new Search(this.table, index);
+        for (int index = this.searchers != null ? this.searchers.length : 0; index < threads; index++)
+            searchers[index].setNetwork(this.network);
+        this.searchers = searchers;
+        this.searchers[0].setListener(this.listener == null ? null : this::report);
+    }
+
+    public int getThreads() {
+        return this.searchers.length;
+    }
+
+    // Evaluate with the network on every thread, null for the handcrafted evaluation
+    public void setNetwork(Network network) {
+
+        this.network = network;
+        for (Search searcher : this.searchers)
+            searcher.setNetwork(network);
+    }
+
+    public void setHashSize(int megabytes) {
+        this.table.resize(megabytes);
+    }
+
+    // Permille of the table in use
+    public int hashfull() {
+        return this.table.hashfull();
+    }
+
+    // Forget everything learned from earlier searches
+    public void clear() {
+        for (Search searcher : this.searchers)
+            searcher.clear();
+    }
+
+    // Called with every iteration the main thread completes, nodes summed over all threads
+    public void setListener(Consumer<Result> listener) {
+        this.listener = listener;
+        this.searchers[0].setListener(listener == null ? null : this::report);
+    }
+
+    private void report(Result result) {
+        this.listener.accept(new Result(result, this.threadNodes(), result.getMilliseconds()));
+    }
+
+    private long[] threadNodes() {
+
+        long[] nodes = new long[this.searchers.length];
+        for (int index = 0; index < nodes.length; index++)
+            nodes[index] = this.searchers[index].getNodes();
+        return nodes;
+    }
+
+    // Ask every thread to return as soon as possible, safe from any thread
+    public void stop() {
+        for (Search searcher : this.searchers)
+            searcher.stop();
+    }
+
+    // Search on all threads until the main thread is done, the board itself is left untouched.
+    // The limits govern the main thread, helpers run until it stops them.
+    public Result search(Chessboard position, Limits limits) {
+
+        Search[] searchers = this.searchers;
+        for (Search searcher : searchers)
+            searcher.reset();
+        this.table.newSearch();
+
+        long      start   = System.nanoTime();
+        Limits    helping = new Limits(limits.getDepth(), 0, 0);
+        Result[]  results = new Result[searchers.length];
+        Thread[]  helpers = new Thread[searchers.length - 1];
+        for (int index = 1; index < searchers.length; index++) {
+            final int helper = index;
+            helpers[helper - 1] = new Thread(() -> results[helper] = searchers[helper].run(position, helping),
+                    "search-" + helper);
+            helpers[helper - 1].start();
+        }
+
+        results[0] = searchers[0].run(position, limits);
+
+        for (Search searcher : searchers)
+            searcher.stop();
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // A helper that completed a deeper iteration knows better, the main thread wins ties
+        Result best = results[0];
+        for (Result result : results)
+            if (result != null && result.getDepth() > best.getDepth() && result.getBestMove() != Move.NONE)
+                best = result;
+        return new Result(best, this.threadNodes(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Unit testing and benchmarking
+    //   no arguments                       : check searches on several threads
+    //   <threads> <milliseconds> [fen]     : report nodes per thread and aggregate speed
+    public static void main(String[] args) {
+
+        if (args.length >= 2) {
+            LazySmp smp   = new LazySmp(Integer.parseInt(args[0]), 64);
+            String  fen   = args.length > 2 ? String.join(" ", Arrays.copyOfRange(args, 2, args.length))
+                                            : "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+            smp.setListener(System.out::println);
+            Result result = smp.search(Chessboard.fromFen(fen), new Limits(0, 0, Long.parseLong(args[1])));
+            long[] nodes  = result.getThreadNodes();
+            for (int index = 0; index < nodes.length; index++)
+                System.out.printf("thread %2d: %,14d nodes%n", index, nodes[index]);
+            System.out.printf("total    : %,14d nodes in %,d ms, %,d nps%n",
+                    result.getNodes(), result.getMilliseconds(), result.getNps());
+            System.out.printf("pawn table hit rate of the main thread: %.1f%%%n",
+                    100 * smp.searchers[0].getPawnTable().getHitRate());
+            return;
+        }
+
+        LazySmp smp = new LazySmp(4, 16);
+
+        // The mate in two is still found, every thread took part and the nodes add up
+        Chessboard board  = Chessboard.fromFen("3r2k1/5ppp/8/8/8/8/4R3/4R1K1 w - - 0 1");
+        Result     result = smp.search(board, new Limits(5, 0, 0));
+        long[]     nodes  = result.getThreadNodes();
+        long       total  = 0;
+        for (long count : nodes)
+            total += count;
+        if (result.getScore() != Search.MATE - 3 || nodes.length != 4 || total != result.getNodes() || nodes[0] == 0)
+            throw new UnitTestException("Parallel mate is wrong: " + result);
+
+        // A tactic, with the main thread under a time limit
+        result = smp.search(Chessboard.fromFen("r3k3/8/8/3N4/8/8/8/4K3 w - - 0 1"), new Limits(0, 0, 300));
+        if (!Move.toString(result.getBestMove()).equals("d5c7"))
+            throw new UnitTestException("Parallel tactic is wrong: " + result);
+
+        // Stopping from another thread ends an unlimited search, then shrink to one thread
+        board = new Chessboard();
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            smp.stop();
+        });
+        stopper.start();
+        result = smp.search(board, new Limits());
+        if (result.getBestMove() == Move.NONE || !board.equals(new Chessboard()))
+            throw new UnitTestException("Parallel stop is wrong: " + result);
+
+        smp.setThreads(1);
+        result = smp.search(board, new Limits(4, 0, 0));
+        if (result.getThreadNodes().length != 1 || result.getDepth() != 4)
+            throw new UnitTestException("Resizing threads is wrong: " + result);
+
+        // Growing again hands the network to the new threads too
+        smp.setNetwork(Network.random(32, 1));
+        smp.setThreads(2);
+        result = smp.search(board, new Limits(4, 0, 0));
+        if (result.getBestMove() == Move.NONE || result.getThreadNodes()[1] == 0)
+            throw new UnitTestException("Searching with a network is wrong: " + result);
+    }
+}
@@ -0,0 +1,26 @@
+package search;
+
+public class Limits {
+
+    // Zero means no limit, a search with no limits at all runs until stopped
+    private int  depth;
+    private long nodes;
+    private long milliseconds;
+
+    // Constructors
+    public Limits(int depth, long nodes, long milliseconds) {
+
+        this.depth        = depth;
+        this.nodes        = nodes;
+        this.milliseconds = milliseconds;
+    }
+
+    public Limits() {
+        this(0, 0, 0);
+    }
+
+    // Getters
+    public int  getDepth()        { return this.depth; }
+    public long getNodes()        { return this.nodes; }
+    public long getMilliseconds() { return this.milliseconds; }
+}
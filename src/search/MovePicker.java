@@ -0,0 +1,274 @@
+package search;
+
+import representation.Chessboard;
+import representation.Move;
+import representation.UnitTestException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class MovePicker {
+
+    // https://www.chessprogramming.org/Move_Generation#Staged_Move_Generation
+
+    // Moves come out one at a time, each stage generated only once the ones before it are used
+    // up, since most cutoffs happen on the first move or two:
+    //   the TT move, checked for legality but not generated
+    //   captures and promotions that do not lose material, most valuable victim first
+    //   the two killers, checked like the TT move
+    //   the quiets, by history
+    //   the losing captures, set aside while picking the good ones
+    private static final int TT_MOVE         = 0;
+    private static final int GENERATE_NOISY  = 1;
+    private static final int GOOD_NOISY      = 2;
+    private static final int KILLERS         = 3;
+    private static final int GENERATE_QUIETS = 4;
+    private static final int QUIETS          = 5;
+    private static final int BAD_NOISY       = 6;
+    private static final int DONE            = 7;
+
+    // MVV-LVA rank of each piece type, pawns lowest and kings highest
+    private static final int[] ORDER = {0, 0, 6, 2, 4, 3, 5, 1};
+
+    // Attributes
+    private Chessboard board;
+    private int[]      moves;
+    private int[]      scores;
+    private int[][]    history;
+    private int        ttMove;
+    private int        killer1;
+    private int        killer2;
+    private boolean    isNoisyOnly;
+    private boolean    isJittered;
+    private long       random;
+
+    // Position in the stages and in the buffer, losing captures being kept at its front
+    private int stage;
+    private int killerIndex;
+    private int index;
+    private int end;
+    private int badEnd;
+
+    // Constructor
+    MovePicker(long seed) {
+
+        this.moves  = new int[Chessboard.MAX_MOVES];
+        this.scores = new int[Chessboard.MAX_MOVES];
+        this.random = seed;
+    }
+
+    // Every legal move, the ones given first if they are legal here. Jittered pickers shuffle
+    // the quiets a little, so helper threads explore different first moves.
+    void init(Chessboard board, int ttMove, int[] killers, int[][] history, boolean isJittered) {
+
+        this.board       = board;
+        this.ttMove      = ttMove;
+        this.killer1     = killers[0];
+        this.killer2     = killers[1];
+        this.history     = history;
+        this.isNoisyOnly = false;
+        this.isJittered  = isJittered;
+        this.stage       = TT_MOVE;
+        this.killerIndex = 0;
+    }
+
+    // Captures and promotions that do not lose material, and nothing else
+    void initNoisy(Chessboard board) {
+
+        this.board       = board;
+        this.ttMove      = Move.NONE;
+        this.killer1     = Move.NONE;
+        this.killer2     = Move.NONE;
+        this.isNoisyOnly = true;
+        this.isJittered  = false;
+        this.stage       = GENERATE_NOISY;
+    }
+
+    // The next move to search, NONE once there are no more
+    int next() {
+
+        while (true) {
+            switch (this.stage) {
+
+                case TT_MOVE:
+                    this.stage = GENERATE_NOISY;
+                    if (this.board.isLegal(this.ttMove))
+                        return this.ttMove;
+                    break;
+
+                case GENERATE_NOISY:
+                    this.index  = 0;
+                    this.badEnd = 0;
+                    this.end    = this.board.generateNoisy(this.moves, 0);
+                    this.scoreNoisy();
+                    this.stage  = GOOD_NOISY;
+                    break;
+
+                case GOOD_NOISY:
+                    while (this.index < this.end) {
+                        int move = this.pickBest();
+                        if (move == this.ttMove)
+                            continue;
+                        if (this.board.see(move, 0))
+                            return move;
+                        this.moves[this.badEnd++] = move;
+                    }
+                    this.stage = this.isNoisyOnly ? DONE : KILLERS;
+                    break;
+
+                case KILLERS:
+                    while (this.killerIndex < 2) {
+                        int killer = this.killerIndex++ == 0 ? this.killer1 : this.killer2;
+                        if (killer != this.ttMove && this.board.isLegal(killer))
+                            return killer;
+                    }
+                    this.stage = GENERATE_QUIETS;
+                    break;
+
+                case GENERATE_QUIETS:
+                    this.index = this.end;
+                    this.end   = this.board.generateQuiets(this.moves, this.end);
+                    this.scoreQuiets();
+                    this.stage = QUIETS;
+                    break;
+
+                case QUIETS:
+                    while (this.index < this.end) {
+                        int move = this.pickBest();
+                        if (move != this.ttMove && !this.isKiller(move))
+                            return move;
+                    }
+                    this.index = 0;
+                    this.stage = BAD_NOISY;
+                    break;
+
+                case BAD_NOISY:
+                    if (this.index < this.badEnd)
+                        return this.moves[this.index++];
+                    this.stage = DONE;
+                    break;
+
+                default:
+                    return Move.NONE;
+            }
+        }
+    }
+
+    private boolean isKiller(int move) {
+        return move == this.killer1 || move == this.killer2;
+    }
+
+    // Most valuable victim first, least valuable attacker breaking ties
+    private void scoreNoisy() {
+
+        for (int i = 0; i < this.end; i++) {
+            int move   = this.moves[i];
+            int victim = Move.isCapture(move)   ? ORDER[Move.getCaptured(move)]      : 0;
+            int gain   = Move.isPromotion(move) ? ORDER[Move.getPromotedPiece(move)] : 0;
+            this.scores[i] = 64 * (victim + gain) - ORDER[this.board.getPieceType(Move.getFrom(move))];
+        }
+    }
+
+    private void scoreQuiets() {
+
+        for (int i = this.index; i < this.end; i++) {
+            int move = this.moves[i];
+            this.scores[i] = this.history[Move.getFrom(move)][Move.getTo(move)];
+            if (this.isJittered)
+                this.scores[i] += (int)(this.nextRandom() & 0xFF);
+        }
+    }
+
+    // xorshift64
+    private long nextRandom() {
+        this.random ^= this.random << 13;
+        this.random ^= this.random >>> 7;
+        this.random ^= this.random << 17;
+        return this.random;
+    }
+
+    // Selection sort one step at a time, most nodes cut before the list is half sorted
+    private int pickBest() {
+
+        int best = this.index;
+        for (int i = this.index + 1; i < this.end; i++)
+            if (this.scores[i] > this.scores[best])
+                best = i;
+
+        int move = this.moves[best];
+        this.moves[best]  = this.moves[this.index];
+        this.scores[best] = this.scores[this.index];
+        this.index++;
+        return move;
+    }
+
+    private static int quietOrNone(int move) {
+        return Move.isCapture(move) || Move.isPromotion(move) ? Move.NONE : move;
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        MovePicker picker  = new MovePicker(1);
+        Chessboard board   = new Chessboard();
+        Random     random  = new Random(13);
+        int[]      legal   = new int[Chessboard.MAX_MOVES];
+        int[]      picked  = new int[Chessboard.MAX_MOVES];
+        int[][]    history = new int[64][64];
+        int[]      stale   = {Move.NONE, Move.NONE, Move.NONE};
+
+        for (int game = 0; game < 30; game++) {
+
+            board.loadFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+            for (int made = 0; made < 100; made++) {
+
+                int count = board.generateMoves(legal);
+                if (count == 0)
+                    break;
+
+                // Hash move and killers either legal here or left over from earlier positions,
+                // killers being quiet moves as the search only keeps those
+                int   ttMove  = random.nextBoolean() ? legal[random.nextInt(count)] : stale[0];
+                int[] killers = {quietOrNone(stale[1]),
+                                 quietOrNone(random.nextBoolean() ? legal[random.nextInt(count)] : stale[2])};
+                if (killers[0] == killers[1])
+                    killers[1] = Move.NONE;
+
+                // Every legal move comes out exactly once, a legal hash move first
+                picker.init(board, ttMove, killers, history, game % 2 == 0);
+                int total = 0;
+                for (int move = picker.next(); move != Move.NONE; move = picker.next())
+                    picked[total++] = move;
+                if (board.isLegal(ttMove) && picked[0] != ttMove)
+                    throw new UnitTestException("Hash move is not first at " + board.toFen());
+                int[] expected = Arrays.copyOf(legal, count);
+                int[] actual   = Arrays.copyOf(picked, total);
+                Arrays.sort(expected);
+                Arrays.sort(actual);
+                if (!Arrays.equals(expected, actual))
+                    throw new UnitTestException("Picked moves are wrong at " + board.toFen());
+
+                // Noisy only gives the captures and promotions that hold their own
+                picker.initNoisy(board);
+                total = 0;
+                for (int move = picker.next(); move != Move.NONE; move = picker.next())
+                    picked[total++] = move;
+                int noisy = 0;
+                for (int i = 0; i < count; i++)
+                    if ((Move.isCapture(legal[i]) || Move.isPromotion(legal[i])) && board.see(legal[i], 0))
+                        noisy++;
+                if (total != noisy)
+                    throw new UnitTestException("Picked noisy moves are wrong at " + board.toFen());
+                for (int i = 0; i < total; i++)
+                    if (!Move.isCapture(picked[i]) && !Move.isPromotion(picked[i]))
+                        throw new UnitTestException("Quiet move picked as noisy at " + board.toFen());
+
+                int move = legal[random.nextInt(count)];
+                if (!Move.isCapture(move))
+                    history[Move.getFrom(move)][Move.getTo(move)] += random.nextInt(100);
+                stale[random.nextInt(3)] = move;
+                board.makeMove(move);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package search;
+
+import representation.Move;
+
+public class Result {
+
+    // Attributes
+    private int    bestMove;
+    private int    score;
+    private int    depth;
+    private long   nodes;
+    private long   milliseconds;
+    private int[]  pv;
+    private long[] threadNodes;
+
+    // Constructors
+    Result(int bestMove, int score, int depth, long nodes, long milliseconds, int[] pv) {
+
+        this.bestMove     = bestMove;
+        this.score        = score;
+        this.depth        = depth;
+        this.nodes        = nodes;
+        this.milliseconds = milliseconds;
+        this.pv           = pv;
+        this.threadNodes  = new long[] {nodes};
+    }
+
+    // The same line, with the nodes of every thread that took part
+    Result(Result line, long[] threadNodes, long milliseconds) {
+
+        this(line.bestMove, line.score, line.depth, 0, milliseconds, line.pv);
+        this.threadNodes = threadNodes;
+        for (long count : threadNodes)
+            this.nodes += count;
+    }
+
+    // Getters
+    public int   getBestMove()     { return this.bestMove; }
+    public int   getScore()        { return this.score; }
+    public int   getDepth()        { return this.depth; }
+    public long  getNodes()        { return this.nodes; }
+    public long  getMilliseconds() { return this.milliseconds; }
+    public int[] getPv()           { return this.pv; }
+
+    // Nodes searched by each thread, the main thread first
+    public long[] getThreadNodes() { return this.threadNodes; }
+
+    public long getNps() {
+        return this.nodes * 1000 / Math.max(1, this.milliseconds);
+    }
+
+    // Whether the score announces a forced mate, for either side
+    public boolean isMate() {
+        return Math.abs(this.score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    // Moves until mate, negative when being mated
+    public int getMateIn() {
+        int plies = Search.MATE - Math.abs(this.score);
+        return this.score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder output = new StringBuilder();
+        output.append("depth ").append(this.depth);
+        if (this.isMate())
+            output.append(" mate ").append(this.getMateIn());
+        else
+            output.append(" cp ").append(this.score);
+        output.append(" nodes ").append(this.nodes).append(" time ").append(this.milliseconds);
+        output.append(" nps ").append(this.getNps()).append(" pv");
+        for (int move : this.pv)
+            output.append(' ').append(Move.toString(move));
+        return output.toString();
+    }
+}
@@ -0,0 +1,501 @@
+package search;
+
+import nnue.Network;
+import representation.Chessboard;
+import representation.IncrementalEvaluator;
+import representation.Move;
+import representation.PawnTable;
+import representation.UnitTestException;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class Search {
+
+    // https://www.chessprogramming.org/Principal_Variation_Search
+    // https://www.chessprogramming.org/Iterative_Deepening
+    // https://www.chessprogramming.org/Aspiration_Windows
+    // https://www.chessprogramming.org/Quiescence_Search
+
+    // Scores, mates count down from MATE by the number of plies to reach them
+    public static final int INFINITY = 32000;
+    public static final int MATE     = 31000;
+    public static final int MAX_PLY  = 128;
+    private static final int MATE_BOUND = MATE - MAX_PLY;
+
+    // Aspiration windows open this wide around the last score, from this depth on
+    private static final int WINDOW       = 25;
+    private static final int WINDOW_DEPTH = 5;
+
+    // Each thread's pawn structure cache
+    private static final int PAWN_TABLE_KILOBYTES = 1024;
+
+    // The clock is read once per this many nodes
+    private static final int CHECK_INTERVAL = 1024;
+
+    // History counters are halved once one reaches this
+    private static final int HISTORY_MAX = 1 << 20;
+
+    // Lazy SMP helpers skip some iterations so threads spread over several depths,
+    // helper i skips a depth when ((depth + phase) / size) is odd
+    // https://www.chessprogramming.org/Lazy_SMP
+    private static final int[] SKIP_SIZE  = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+    // Attributes
+    private TranspositionTable   table;
+    private PawnTable            pawnTable;
+    private Network              network;
+    private IncrementalEvaluator evaluator;
+    private Chessboard           board;
+    private MovePicker[]         pickers;
+    private int[][]              killers;
+    private int[][][]            history;
+    private int[][]              pv;
+    private int[]                pvLength;
+    private Consumer<Result>     listener;
+
+    // Zero for the main thread, helpers perturb their depths and root ordering by it
+    private int index;
+
+    // Per search state
+    private long             nodes;
+    private long             nodeLimit;
+    private long             startTime;
+    private long             deadline;
+    private boolean          canAbort;
+    private volatile boolean isStopped;
+
+    // Constructors
+    Search(TranspositionTable table, int index) {
+
+        this.table     = table;
+        this.pawnTable = new PawnTable(PAWN_TABLE_KILOBYTES);
+        this.index     = index;
+        this.pickers   = new MovePicker[MAX_PLY + 1];
+        this.killers   = new int[MAX_PLY + 1][2];
+        this.history   = new int[2][64][64];
+        this.pv        = new int[MAX_PLY + 1][MAX_PLY + 1];
+        this.pvLength  = new int[MAX_PLY + 1];
+        for (int ply = 0; ply <= MAX_PLY; ply++)
+            this.pickers[ply] = new MovePicker(0x9E3779B97F4A7C15L * (index + 1) + ply);
+    }
+
+    public Search(int hashMegabytes) {
+        this(new TranspositionTable(hashMegabytes), 0);
+    }
+
+    // Called with the result of every completed iteration
+    public void setListener(Consumer<Result> listener) {
+        this.listener = listener;
+    }
+
+    // Ask a running search to return as soon as possible, safe from any thread
+    public void stop() {
+        this.isStopped = true;
+    }
+
+    // Forget everything learned from earlier searches
+    public void clear() {
+
+        this.table.clear();
+        this.pawnTable.clear();
+        for (int[] pair : this.killers)
+            pair[0] = pair[1] = Move.NONE;
+        for (int[][] side : this.history)
+            for (int[] row : side)
+                Arrays.fill(row, 0);
+    }
+
+    // Search the position within the limits, the board itself is left untouched
+    public Result search(Chessboard position, Limits limits) {
+
+        this.isStopped = false;
+        this.table.newSearch();
+        return this.run(position, limits);
+    }
+
+    // Lower the stop flag ahead of a run, so a stop raised before the run starts is never lost
+    void reset() {
+        this.isStopped = false;
+    }
+
+    // Search without touching the stop flag or the table's age, which the caller owns
+    Result run(Chessboard position, Limits limits) {
+
+        this.board     = new Chessboard(position);
+        this.board.setPawnTable(this.pawnTable);
+        if (this.network != null) {
+            if (this.evaluator == null)
+                this.evaluator = this.network.newEvaluator();
+            this.board.setEvaluator(this.evaluator);
+        }
+        this.nodes     = 0;
+        this.nodeLimit = limits.getNodes();
+        this.startTime = System.nanoTime();
+        this.deadline  = limits.getMilliseconds() > 0 ? this.startTime + limits.getMilliseconds() * 1_000_000 : Long.MAX_VALUE;
+        this.canAbort  = false;
+        for (int[] pair : this.killers)
+            pair[0] = pair[1] = Move.NONE;
+
+        // Fall back on any legal move should the first iteration be stopped
+        int[] rootMoves = new int[Chessboard.MAX_MOVES];
+        int   count     = this.board.generateMoves(rootMoves);
+        Result result   = new Result(count > 0 ? rootMoves[0] : Move.NONE, 0, 0, 0, 0, new int[0]);
+        if (count == 0)
+            return result;
+
+        int maxDepth = limits.getDepth() > 0 ? Math.min(limits.getDepth(), MAX_PLY) : MAX_PLY;
+        int score    = 0;
+
+        for (int depth = 1; depth <= maxDepth; depth++) {
+
+            if (this.index > 0 && depth > 1 && depth < maxDepth && this.isSkipped(depth))
+                continue;
+
+            score = this.aspiration(depth, score);
+            if (this.isStopped)
+                break;
+
+            long millis = (System.nanoTime() - this.startTime) / 1_000_000;
+            int[] line  = Arrays.copyOf(this.pv[0], this.pvLength[0]);
+            result = new Result(line[0], score, depth, this.nodes, millis, line);
+            if (this.listener != null)
+                this.listener.accept(result);
+
+            // From here on the limits may cut an iteration short
+            this.canAbort = true;
+
+            // A mate found needs no deeper look, and an iteration begun past half the time rarely finishes
+            if (Math.abs(score) >= MATE_BOUND && depth >= MATE - Math.abs(score))
+                break;
+            if (limits.getMilliseconds() > 0 && millis * 2 > limits.getMilliseconds())
+                break;
+        }
+
+        // Report the nodes spent on an unfinished iteration too
+        return new Result(result.getBestMove(), result.getScore(), result.getDepth(), this.nodes,
+                (System.nanoTime() - this.startTime) / 1_000_000, result.getPv());
+    }
+
+    // Evaluate with the network from the next search on, null for the handcrafted evaluation
+    public void setNetwork(Network network) {
+        this.network   = network;
+        this.evaluator = null;
+    }
+
+    // Pawn structure cache, for its hit rate
+    public PawnTable getPawnTable() {
+        return this.pawnTable;
+    }
+
+    // Nodes searched so far, readable while searching
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    private boolean isSkipped(int depth) {
+
+        int helper = (this.index - 1) % SKIP_SIZE.length;
+        return (depth + SKIP_PHASE[helper]) / SKIP_SIZE[helper] % 2 != 0;
+    }
+
+    // Search a narrow window around the last score, widening whichever side fails
+    private int aspiration(int depth, int previous) {
+
+        int delta = WINDOW;
+        int alpha = -INFINITY;
+        int beta  = INFINITY;
+        if (depth >= WINDOW_DEPTH) {
+            alpha = Math.max(previous - delta, -INFINITY);
+            beta  = Math.min(previous + delta, INFINITY);
+        }
+
+        while (true) {
+
+            int score = this.negamax(depth, alpha, beta, 0);
+            if (this.isStopped)
+                return score;
+
+            if (score <= alpha && alpha > -INFINITY)
+                alpha = Math.max(score - delta, -INFINITY);
+            else if (score >= beta && beta < INFINITY)
+                beta = Math.min(score + delta, INFINITY);
+            else
+                return score;
+
+            delta *= 2;
+        }
+    }
+
+    // Poll the stop flag and the limits
+    private boolean shouldStop() {
+
+        if (this.isStopped)
+            return true;
+        if (!this.canAbort)
+            return false;
+
+        if ((this.nodeLimit > 0 && this.nodes >= this.nodeLimit) ||
+            ((this.nodes & (CHECK_INTERVAL - 1)) == 0 && System.nanoTime() >= this.deadline))
+            this.isStopped = true;
+        return this.isStopped;
+    }
+
+    // Mate scores are stored relative to the node, not the root
+    private static int toTable(int score, int ply) {
+        return score >= MATE_BOUND ? score + ply : score <= -MATE_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= MATE_BOUND ? score - ply : score <= -MATE_BOUND ? score + ply : score;
+    }
+
+    // Principal variation search
+    private int negamax(int depth, int alpha, int beta, int ply) {
+
+        this.pvLength[ply] = ply;
+
+        if (ply > 0 && this.board.isDraw())
+            return 0;
+
+        boolean isInCheck = this.board.isInCheck();
+
+        // Don't stop in check, the evasions are few
+        if (isInCheck)
+            depth++;
+
+        if (depth <= 0)
+            return this.quiescence(alpha, beta, ply);
+
+        this.nodes++;
+        if (this.shouldStop())
+            return 0;
+        if (ply >= MAX_PLY)
+            return this.board.evaluate();
+
+        // Cut straight away on a deep enough bound, except along the principal variation
+        boolean isPv   = beta - alpha > 1;
+        long    data   = this.table.probe(this.board.getHash());
+        int     ttMove = TranspositionTable.getMove(data);
+        if (data != TranspositionTable.MISS && !isPv && ply > 0 && TranspositionTable.getDepth(data) >= depth) {
+
+            int score = fromTable(TranspositionTable.getScore(data), ply);
+            int bound = TranspositionTable.getBound(data);
+            if (bound == TranspositionTable.EXACT ||
+                (bound == TranspositionTable.LOWER && score >= beta) ||
+                (bound == TranspositionTable.UPPER && score <= alpha))
+                return score;
+        }
+
+        MovePicker picker = this.pickers[ply];
+        picker.init(this.board, ttMove, this.killers[ply], this.history[this.board.getSideToMove()],
+                ply == 0 && this.index > 0);
+
+        int alphaOrig = alpha;
+        int bestScore = -INFINITY;
+        int bestMove  = Move.NONE;
+        int searched  = 0;
+
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+
+            this.board.makeMove(move);
+            int score;
+            if (searched++ == 0)
+                score = -this.negamax(depth - 1, -beta, -alpha, ply + 1);
+            else {
+                // Prove every later move worse with a null window, re-searching the ones that aren't
+                score = -this.negamax(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta)
+                    score = -this.negamax(depth - 1, -beta, -alpha, ply + 1);
+            }
+            this.board.unmakeMove();
+
+            if (this.isStopped)
+                return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove  = move;
+
+                if (score > alpha) {
+                    alpha = score;
+                    this.updatePv(ply, move);
+
+                    if (alpha >= beta) {
+                        if (!Move.isCapture(move) && !Move.isPromotion(move))
+                            this.rewardQuiet(ply, move, depth);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Mated or stalemated
+        if (searched == 0)
+            return isInCheck ? -MATE + ply : 0;
+
+        int bound = bestScore >= beta      ? TranspositionTable.LOWER
+                  : bestScore > alphaOrig  ? TranspositionTable.EXACT
+                  :                          TranspositionTable.UPPER;
+        this.table.store(this.board.getHash(), bound == TranspositionTable.UPPER ? Move.NONE : bestMove,
+                toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    // Resolve captures until the position is quiet, every evasion counts when in check
+    private int quiescence(int alpha, int beta, int ply) {
+
+        this.pvLength[ply] = ply;
+
+        this.nodes++;
+        if (this.shouldStop())
+            return 0;
+        if (ply >= MAX_PLY)
+            return this.board.evaluate();
+
+        boolean isInCheck = this.board.isInCheck();
+        int     bestScore = -INFINITY;
+
+        // Standing pat, the side to move can usually do at least as well as doing nothing
+        if (!isInCheck) {
+            bestScore = this.board.evaluate();
+            if (bestScore >= beta)
+                return bestScore;
+            alpha = Math.max(alpha, bestScore);
+        }
+
+        // Every evasion in check, otherwise only the captures and promotions not losing material
+        MovePicker picker = this.pickers[ply];
+        if (isInCheck)
+            picker.init(this.board, Move.NONE, this.killers[ply], this.history[this.board.getSideToMove()], false);
+        else
+            picker.initNoisy(this.board);
+
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+
+            this.board.makeMove(move);
+            int score = -this.quiescence(-beta, -alpha, ply + 1);
+            this.board.unmakeMove();
+
+            if (this.isStopped)
+                return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+
+        // Checked with no evasion
+        if (bestScore == -INFINITY)
+            return -MATE + ply;
+        return bestScore;
+    }
+
+    // A quiet move caused a cutoff, remember it as a killer and in the history
+    private void rewardQuiet(int ply, int move, int depth) {
+
+        if (this.killers[ply][0] != move) {
+            this.killers[ply][1] = this.killers[ply][0];
+            this.killers[ply][0] = move;
+        }
+
+        int[][] history = this.history[this.board.getSideToMove()];
+        int from = Move.getFrom(move);
+        int to   = Move.getTo(move);
+        history[from][to] += depth * depth;
+
+        // Age everything once a counter grows too large, keeping quiets below the killers
+        if (history[from][to] >= HISTORY_MAX)
+            for (int[] row : history)
+                for (int square = 0; square < 64; square++)
+                    row[square] /= 2;
+    }
+
+    // The child's line with this move in front
+    private void updatePv(int ply, int move) {
+
+        this.pv[ply][ply] = move;
+        for (int next = ply + 1; next < this.pvLength[ply + 1]; next++)
+            this.pv[ply][next] = this.pv[ply + 1][next];
+        this.pvLength[ply] = Math.max(this.pvLength[ply + 1], ply + 1);
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        Search search = new Search(16);
+
+        // Mates in one, a back rank mate and the scholar's mate
+        String[][] mates = {
+            {"6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", "a1a8"},
+            {"r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4", "h5f7"},
+        };
+        for (String[] mate : mates) {
+            Result result = search.search(Chessboard.fromFen(mate[0]), new Limits(4, 0, 0));
+            if (!Move.toString(result.getBestMove()).equals(mate[1]) || result.getScore() != MATE - 1)
+                throw new UnitTestException("Missed mate in one: " + mate[0] + " " + result);
+        }
+
+        // Mate in two through a rook sacrifice on the back rank
+        Result result = search.search(Chessboard.fromFen("3r2k1/5ppp/8/8/8/8/4R3/4R1K1 w - - 0 1"), new Limits(5, 0, 0));
+        if (result.getScore() != MATE - 3 || result.getMateIn() != 2 || result.getPv().length != 3)
+            throw new UnitTestException("Missed mate in two: " + result);
+
+        // Being mated is scored as such
+        result = search.search(Chessboard.fromFen("k7/8/1K6/8/8/8/8/7R b - - 0 1"), new Limits(4, 0, 0));
+        if (result.getScore() != -MATE + 2 || result.getMateIn() != -1)
+            throw new UnitTestException("Missed being mated: " + result);
+
+        // Free queen, and a queen won through a knight fork
+        String[][] tactics = {
+            {"4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1",    "d1d5"},
+            {"4k3/8/2q5/8/3N4/8/8/4K3 w - - 0 1",   "d4c6"},
+            {"r3k3/8/8/3N4/8/8/8/4K3 w - - 0 1",    "d5c7"},
+        };
+        for (String[] tactic : tactics) {
+            result = search.search(Chessboard.fromFen(tactic[0]), new Limits(6, 0, 0));
+            if (!Move.toString(result.getBestMove()).equals(tactic[1]))
+                throw new UnitTestException("Missed tactic: " + tactic[0] + " " + result);
+        }
+
+        // Stalemate scores nothing, and there is no move to play
+        result = search.search(Chessboard.fromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"), new Limits(3, 0, 0));
+        if (result.getBestMove() != Move.NONE || result.getScore() != 0)
+            throw new UnitTestException("Stalemate is wrong: " + result);
+
+        // The node limit holds, give or take the first iteration
+        result = search.search(new Chessboard(), new Limits(0, 20000, 0));
+        if (result.getBestMove() == Move.NONE || result.getNodes() > 20000 + 1000)
+            throw new UnitTestException("Node limit is wrong: " + result);
+
+        // The time limit holds
+        long start = System.nanoTime();
+        result = search.search(new Chessboard(), new Limits(0, 0, 200));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (result.getBestMove() == Move.NONE || millis > 400)
+            throw new UnitTestException("Time limit is wrong: " + millis + " ms");
+
+        // Stopping from another thread ends an unlimited search
+        Chessboard board = new Chessboard();
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            search.stop();
+        });
+        stopper.start();
+        result = search.search(board, new Limits());
+        if (result.getBestMove() == Move.NONE || !board.equals(new Chessboard()))
+            throw new UnitTestException("Stopping is wrong: " + result);
+
+        System.out.println(result);
+    }
+}
@@ -0,0 +1,238 @@
+package search;
+
+import representation.UnitTestException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+class TranspositionTable {
+
+    // https://www.chessprogramming.org/Transposition_Table
+    // https://www.chessprogramming.org/Shared_Hash_Table#Lockless
+
+    // Bound types
+    static final int EXACT = 1;
+    static final int LOWER = 2;
+    static final int UPPER = 3;
+
+    // Probe result when nothing was found, no real entry packs to zero since the bound is never zero
+    static final long MISS = 0L;
+
+    // Each bucket holds a depth-preferred slot then an always-replace slot,
+    // each slot being two longs: key ^ data, then data
+    private static final int LONGS_PER_SLOT   = 2;
+    private static final int LONGS_PER_BUCKET = 2 * LONGS_PER_SLOT;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * Long.BYTES;
+
+    // Packed data layout
+    //   bits  0-19 : best move
+    //   bits 20-35 : score, signed
+    //   bits 36-43 : depth
+    //   bits 44-45 : bound
+    //   bits 46-51 : age of the search that stored it
+    private static final int  SCORE_SHIFT = 20;
+    private static final int  DEPTH_SHIFT = 36;
+    private static final int  BOUND_SHIFT = 44;
+    private static final int  AGE_SHIFT   = 46;
+    private static final long MOVE_MASK   = 0xFFFFFL;
+    private static final int  AGE_MASK    = 0x3F;
+
+    // Atomic, but otherwise unordered, access to the slots
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Attributes
+    private long[] table;
+    private int    bucketMask;
+    private int    age;
+
+    // Constructor
+    TranspositionTable(int megabytes) {
+        this.resize(megabytes);
+    }
+
+    // Reallocate to the largest power of two number of buckets fitting in the budget
+    void resize(int megabytes) {
+
+        if (megabytes < 1)
+            throw new IllegalArgumentException("Hash size must be at least 1 MB, got " + megabytes + ".");
+
+        long buckets = Long.highestOneBit((long)megabytes * 1024 * 1024 / BYTES_PER_BUCKET);
+        buckets = Math.min(buckets, Integer.MAX_VALUE / LONGS_PER_BUCKET + 1L);
+
+        this.table      = new long[(int)(buckets * LONGS_PER_BUCKET)];
+        this.bucketMask = (int)buckets - 1;
+        this.age        = 0;
+    }
+
+    void clear() {
+        Arrays.fill(this.table, 0L);
+        this.age = 0;
+    }
+
+    // Called once per search so stale entries lose their priority
+    void newSearch() {
+        this.age = (this.age + 1) & AGE_MASK;
+    }
+
+    // Size in bytes
+    long getSize() {
+        return (long)this.table.length * Long.BYTES;
+    }
+
+    // Packing
+    static long pack(int move, int score, int depth, int bound, int age) {
+        return (move & MOVE_MASK)
+             | ((long)(score & 0xFFFF)   << SCORE_SHIFT)
+             | ((long)(depth & 0xFF)     << DEPTH_SHIFT)
+             | ((long)bound              << BOUND_SHIFT)
+             | ((long)(age & AGE_MASK)   << AGE_SHIFT);
+    }
+
+    // Unpacking
+    static int getMove(long data)  { return (int)(data & MOVE_MASK); }
+    static int getScore(long data) { return (short)(data >>> SCORE_SHIFT); }
+    static int getDepth(long data) { return (int)(data >>> DEPTH_SHIFT & 0xFF); }
+    static int getBound(long data) { return (int)(data >>> BOUND_SHIFT & 0x3); }
+    static int getAge(long data)   { return (int)(data >>> AGE_SHIFT & AGE_MASK); }
+
+    // First long of the bucket a key maps to
+    private int bucketOf(long key) {
+        return ((int)(key >>> 32) & this.bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    // Data stored for the key, or MISS
+    long probe(long key) {
+
+        int bucket = this.bucketOf(key);
+
+        for (int slot = bucket; slot < bucket + LONGS_PER_BUCKET; slot += LONGS_PER_SLOT) {
+
+            long checked = (long)SLOTS.getOpaque(this.table, slot);
+            long data    = (long)SLOTS.getOpaque(this.table, slot + 1);
+
+            // A torn or foreign entry fails this test
+            if ((checked ^ data) == key && data != MISS)
+                return data;
+        }
+        return MISS;
+    }
+
+    // Store a result, keeping the old best move if the new one has none
+    void store(long key, int move, int score, int depth, int bound) {
+
+        int  bucket    = this.bucketOf(key);
+        int  preferred = bucket;
+        int  always    = bucket + LONGS_PER_SLOT;
+        long existing  = (long)SLOTS.getOpaque(this.table, preferred + 1);
+        long checked   = (long)SLOTS.getOpaque(this.table, preferred);
+        boolean isSame = (checked ^ existing) == key;
+
+        if (move == 0 && isSame)
+            move = getMove(existing);
+
+        // Deeper or current results keep the depth-preferred slot, the rest go to the always-replace slot
+        int slot = always;
+        if (isSame || existing == MISS || getAge(existing) != this.age || depth >= getDepth(existing))
+            slot = preferred;
+        else if (move == 0) {
+            long other = (long)SLOTS.getOpaque(this.table, always + 1);
+            if (((long)SLOTS.getOpaque(this.table, always) ^ other) == key)
+                move = getMove(other);
+        }
+
+        long data = pack(move, score, depth, bound, this.age);
+        SLOTS.setOpaque(this.table, slot,     key ^ data);
+        SLOTS.setOpaque(this.table, slot + 1, data);
+    }
+
+    // Permille of depth-preferred slots filled during the current search, sampled
+    int hashfull() {
+
+        int sampled = Math.min(1000, this.bucketMask + 1);
+        int filled  = 0;
+
+        for (int index = 0; index < sampled; index++) {
+            long data = (long)SLOTS.getOpaque(this.table, index * LONGS_PER_BUCKET + 1);
+            if (data != MISS && getAge(data) == this.age)
+                filled++;
+        }
+        return filled * 1000 / sampled;
+    }
+
+    // Unit testing
+    public static void main(String[] args) throws InterruptedException {
+
+        TranspositionTable table = new TranspositionTable(1);
+
+        // Sizing rounds down to a power of two number of buckets
+        if (table.getSize() != 1024 * 1024)
+            throw new UnitTestException("Sizing is wrong.");
+
+        // Packing round trips, including negative scores
+        long data = pack(0xABCDE, -31000, 42, LOWER, 5);
+        if (getMove(data) != 0xABCDE || getScore(data) != -31000 || getDepth(data) != 42 ||
+            getBound(data) != LOWER || getAge(data) != 5)
+            throw new UnitTestException("Packing is wrong.");
+
+        // Store and probe
+        long key = 0x123456789ABCDEFL;
+        if (table.probe(key) != MISS)
+            throw new UnitTestException("Empty table hit.");
+        table.store(key, 1234, 55, 7, EXACT);
+        data = table.probe(key);
+        if (getMove(data) != 1234 || getScore(data) != 55 || getDepth(data) != 7 || getBound(data) != EXACT)
+            throw new UnitTestException("Probe is wrong.");
+
+        // Same bucket, other key
+        if (table.probe(key ^ 1) != MISS)
+            throw new UnitTestException("Foreign key hit.");
+
+        // A shallower result in the same bucket goes to the always-replace slot
+        table.store(key ^ 1, 99, -3, 2, UPPER);
+        if (getMove(table.probe(key)) != 1234 || getMove(table.probe(key ^ 1)) != 99)
+            throw new UnitTestException("Replacement is wrong.");
+
+        // Storing without a move keeps the old one
+        table.store(key, 0, 60, 8, LOWER);
+        if (getMove(table.probe(key)) != 1234 || getDepth(table.probe(key)) != 8)
+            throw new UnitTestException("Move retention is wrong.");
+
+        // Once the search ages out, even a shallow result takes the preferred slot
+        table.newSearch();
+        table.store(key ^ 2, 77, 0, 1, EXACT);
+        if (table.probe(key) != MISS || getMove(table.probe(key ^ 2)) != 77)
+            throw new UnitTestException("Aging is wrong.");
+
+        // Many threads hammering a tiny table must never read back an inconsistent entry,
+        // each entry's fields are derived from its key so any hit can be verified
+        TranspositionTable shared = new TranspositionTable(1);
+        Thread[] threads = new Thread[4];
+        boolean[] isBroken = new boolean[1];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t * 0x9E3779B97F4A7C15L + 1;
+            threads[t] = new Thread(() -> {
+                long random = seed;
+                for (int i = 0; i < 200000; i++) {
+                    random ^= random << 13;
+                    random ^= random >>> 7;
+                    random ^= random << 17;
+                    long k = random & 0xFFFF0000FFFFL;
+                    int  m = (int)(k & MOVE_MASK);
+                    if ((i & 1) == 0)
+                        shared.store(k, m, (short)k, (int)(k >>> 8 & 0x7F), EXACT);
+                    else {
+                        long found = shared.probe(k);
+                        if (found != MISS && (getMove(found) != m || getScore(found) != (short)k))
+                            isBroken[0] = true;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        if (isBroken[0])
+            throw new UnitTestException("Concurrent access is wrong.");
+    }
+}
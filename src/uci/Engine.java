@@ -0,0 +1,404 @@
+package uci;
+
+import nnue.Network;
+import representation.Chessboard;
+import representation.Move;
+import representation.Piece;
+import representation.UnitTestException;
+import search.LazySmp;
+import search.Limits;
+import search.Result;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+class Engine {
+
+    // http://wbec-ridderkerk.nl/html/UCIProtocol.html
+
+    // Commands are handled on the caller's thread as they arrive, a search runs on its own
+    // thread so stop and isready are answered straight away while it thinks.
+
+    private static final String NAME   = "chess-bot-jason";
+    private static final String AUTHOR = "Jason";
+    private static final String START  = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Options
+    private static final int DEFAULT_HASH     = 16;
+    private static final int MAX_HASH         = 4096;
+    private static final int DEFAULT_THREADS  = 1;
+    private static final int MAX_THREADS      = 256;
+    private static final int DEFAULT_OVERHEAD = 30;
+    private static final int MAX_OVERHEAD     = 5000;
+
+    // Attributes
+    private PrintStream out;
+    private LazySmp     searcher;
+    private Chessboard  board;
+    private int[]       moves;
+    private long        overhead;
+
+    // State of the search in flight, if any
+    private Thread           thread;
+    private TimeManager      manager;
+    private long             startTime;
+    private boolean          isInfinite;
+    private volatile boolean isStopRequested;
+
+    // Constructor
+    Engine(PrintStream out) {
+
+        this.out      = out;
+        this.searcher = new LazySmp(DEFAULT_THREADS, DEFAULT_HASH);
+        this.board    = new Chessboard();
+        this.moves    = new int[Chessboard.MAX_MOVES];
+        this.overhead = DEFAULT_OVERHEAD;
+        this.searcher.setListener(this::report);
+    }
+
+    // Both the command thread and the search thread write, a line at a time
+    private synchronized void send(String line) {
+        this.out.println(line);
+        this.out.flush();
+    }
+
+    // Handle one line from the GUI, false once it asks to quit
+    boolean handle(String line) {
+
+        String[] tokens = line.trim().split("\\s+");
+        switch (tokens[0]) {
+            case "uci":        this.identify();                break;
+            case "isready":    this.send("readyok");           break;
+            case "ucinewgame": this.newGame();                 break;
+            case "setoption":  this.setOption(line);           break;
+            case "position":   this.setPosition(line, tokens); break;
+            case "go":         this.go(tokens);                break;
+            case "stop":       this.stopAndWait();             break;
+            case "quit":       this.stopAndWait();             return false;
+            case "":           break;
+            default:           this.send("info string unknown command " + tokens[0]); break;
+        }
+        return true;
+    }
+
+    private void identify() {
+
+        this.send("id name " + NAME);
+        this.send("id author " + AUTHOR);
+        this.send("option name Hash type spin default " + DEFAULT_HASH + " min 1 max " + MAX_HASH);
+        this.send("option name Threads type spin default " + DEFAULT_THREADS + " min 1 max " + MAX_THREADS);
+        this.send("option name Move Overhead type spin default " + DEFAULT_OVERHEAD + " min 0 max " + MAX_OVERHEAD);
+        this.send("option name EvalFile type string default <empty>");
+        this.send("uciok");
+    }
+
+    private void newGame() {
+
+        this.stopAndWait();
+        this.searcher.clear();
+    }
+
+    // setoption name <name, possibly with spaces> [value <value>]
+    private void setOption(String line) {
+
+        int nameAt  = line.indexOf(" name ");
+        int valueAt = line.indexOf(" value ");
+        if (nameAt < 0) {
+            this.send("info string setoption needs a name");
+            return;
+        }
+        String name  = (valueAt < 0 ? line.substring(nameAt + 6) : line.substring(nameAt + 6, valueAt)).trim();
+        String value = valueAt < 0 ? "" : line.substring(valueAt + 7).trim();
+
+        // Options only change between searches
+        this.stopAndWait();
+        try {
+            switch (name.toLowerCase()) {
+                case "hash":
+                    this.searcher.setHashSize(clamp(Integer.parseInt(value), 1, MAX_HASH));
+                    break;
+                case "threads":
+                    this.searcher.setThreads(clamp(Integer.parseInt(value), 1, MAX_THREADS));
+                    break;
+                case "move overhead":
+                    this.overhead = clamp(Integer.parseInt(value), 0, MAX_OVERHEAD);
+                    break;
+                case "evalfile":
+                    this.setEvalFile(value);
+                    break;
+                default:
+                    this.send("info string unknown option " + name);
+            }
+        } catch (NumberFormatException exception) {
+            this.send("info string option " + name + " needs a number, got " + value);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    // Load a network, or go back to the handcrafted evaluation on an empty value
+    private void setEvalFile(String value) {
+
+        if (value.isEmpty() || value.equals("<empty>")) {
+            this.searcher.setNetwork(null);
+            return;
+        }
+        try {
+            Network network = Network.load(Path.of(value));
+
+            // Fail here rather than in the middle of a search when the vector module is missing
+            network.newEvaluator();
+            this.searcher.setNetwork(network);
+            this.send("info string loaded " + value + " with " + network.getHidden() + " hidden neurons");
+        } catch (IOException exception) {
+            this.send("info string " + exception.getMessage());
+        } catch (LinkageError error) {
+            this.send("info string networks need the JVM option --add-modules jdk.incubator.vector");
+        }
+    }
+
+    // position [startpos | fen <fen>] [moves <move>...]
+    private void setPosition(String line, String[] tokens) {
+
+        this.stopAndWait();
+        try {
+            if (tokens.length > 1 && tokens[1].equals("fen")) {
+                int fenAt   = line.indexOf("fen") + 3;
+                int movesAt = line.indexOf(" moves");
+                this.board.loadFen(movesAt < 0 ? line.substring(fenAt) : line.substring(fenAt, movesAt));
+            } else
+                this.board.loadFen(START);
+        } catch (IllegalArgumentException exception) {
+            this.send("info string " + exception.getMessage());
+            this.board.loadFen(START);
+            return;
+        }
+
+        int index = 2;
+        while (index < tokens.length && !tokens[index].equals("moves"))
+            index++;
+        for (index++; index < tokens.length; index++) {
+            int move = this.findMove(tokens[index]);
+            if (move == Move.NONE) {
+                this.send("info string illegal move " + tokens[index]);
+                return;
+            }
+            this.board.makeMove(move);
+        }
+    }
+
+    private int findMove(String name) {
+
+        int count = this.board.generateMoves(this.moves);
+        for (int i = 0; i < count; i++)
+            if (Move.toString(this.moves[i]).equals(name))
+                return this.moves[i];
+        return Move.NONE;
+    }
+
+    // go [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [movetime <ms>]
+    //    [depth <n>] [nodes <n>] [infinite]
+    private void go(String[] tokens) {
+
+        this.stopAndWait();
+
+        long time = 0, increment = 0, moveTime = 0, nodes = 0;
+        int  movesToGo = 0, depth = 0;
+        boolean isWhite  = this.board.getSideToMove() == Piece.WHITE;
+        boolean infinite = false;
+        try {
+            for (int index = 1; index < tokens.length; index++) {
+                String value = index + 1 < tokens.length ? tokens[index + 1] : "0";
+                switch (tokens[index]) {
+                    case "wtime":     if (isWhite)  time      = Long.parseLong(value); index++; break;
+                    case "btime":     if (!isWhite) time      = Long.parseLong(value); index++; break;
+                    case "winc":      if (isWhite)  increment = Long.parseLong(value); index++; break;
+                    case "binc":      if (!isWhite) increment = Long.parseLong(value); index++; break;
+                    case "movestogo": movesToGo = Integer.parseInt(value);             index++; break;
+                    case "movetime":  moveTime  = Long.parseLong(value);               index++; break;
+                    case "depth":     depth     = Integer.parseInt(value);             index++; break;
+                    case "nodes":     nodes     = Long.parseLong(value);               index++; break;
+                    case "infinite":  infinite  = true;                                         break;
+                    default:          break;
+                }
+            }
+        } catch (NumberFormatException exception) {
+            this.send("info string bad go command");
+            return;
+        }
+
+        // A clock only when one was given and nothing overrides it
+        this.manager = infinite           ? null
+                     : moveTime > 0       ? TimeManager.fixed(moveTime, this.overhead)
+                     : time > 0           ? new TimeManager(time, increment, movesToGo, this.overhead)
+                     :                      null;
+        Limits limits = new Limits(depth, nodes, this.manager == null ? 0 : this.manager.getHard());
+
+        this.isInfinite      = infinite;
+        this.isStopRequested = false;
+        this.startTime       = System.nanoTime();
+
+        Chessboard position = new Chessboard(this.board);
+        this.thread = new Thread(() -> this.think(position, limits), "search");
+        this.thread.start();
+    }
+
+    // Runs on the search thread
+    private void think(Chessboard position, Limits limits) {
+
+        Result result = this.searcher.search(position, limits);
+
+        // Infinite searches only answer once told to stop, even with a mate in hand
+        if (this.isInfinite)
+            synchronized (this) {
+                while (!this.isStopRequested) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+        this.send("bestmove " + (result.getBestMove() == Move.NONE ? "0000" : Move.toString(result.getBestMove())));
+    }
+
+    // Called on the search thread after every iteration
+    private void report(Result result) {
+
+        StringBuilder line = new StringBuilder("info depth ").append(result.getDepth());
+        if (result.isMate())
+            line.append(" score mate ").append(result.getMateIn());
+        else
+            line.append(" score cp ").append(result.getScore());
+        line.append(" nodes ").append(result.getNodes());
+        line.append(" nps ").append(result.getNps());
+        line.append(" time ").append(result.getMilliseconds());
+        line.append(" hashfull ").append(this.searcher.hashfull());
+        line.append(" pv");
+        for (int move : result.getPv())
+            line.append(' ').append(Move.toString(move));
+        this.send(line.toString());
+
+        // A stop that came before the search had started, or a budget used up on a settled best move
+        long elapsed = (System.nanoTime() - this.startTime) / 1_000_000;
+        if (this.isStopRequested || (this.manager != null && this.manager.isDone(result.getBestMove(), elapsed)))
+            this.searcher.stop();
+    }
+
+    // Stop the search in flight, if any, and wait for its bestmove
+    private void stopAndWait() {
+
+        if (this.thread == null)
+            return;
+
+        synchronized (this) {
+            this.isStopRequested = true;
+            this.notifyAll();
+        }
+        this.searcher.stop();
+        try {
+            this.thread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        this.thread = null;
+    }
+
+    // Unit testing
+    public static void main(String[] args) throws InterruptedException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Engine engine = new Engine(new PrintStream(output, true));
+
+        // Handshake
+        engine.handle("uci");
+        engine.handle("isready");
+        String newline = System.lineSeparator();
+        if (!output.toString().contains("option name Hash") || !output.toString().endsWith("uciok" + newline + "readyok" + newline))
+            throw new UnitTestException("Handshake is wrong: " + output);
+
+        // Moves from the start, then a fixed depth
+        engine.handle("ucinewgame");
+        engine.handle("position startpos moves e2e4 e7e5 g1f3");
+        if (!engine.board.toFen().equals("rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2"))
+            throw new UnitTestException("Position is wrong: " + engine.board.toFen());
+        output.reset();
+        engine.handle("go depth 4");
+        String answer = awaitBestMove(output, 1, 10_000);
+        if (!answer.contains("info depth 4 score cp") || !answer.contains("bestmove "))
+            throw new UnitTestException("Depth search is wrong: " + answer);
+
+        // A mate in one found from a FEN, with options set first
+        engine.handle("setoption name Threads value 2");
+        engine.handle("setoption name Hash value 8");
+        engine.handle("position fen 6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        output.reset();
+        engine.handle("go depth 3");
+        answer = awaitBestMove(output, 1, 10_000);
+        if (!answer.contains("score mate 1") || !answer.contains("bestmove a1a8"))
+            throw new UnitTestException("Mate search is wrong: " + answer);
+        engine.handle("setoption name Threads value 1");
+
+        // An infinite search keeps answering and only reports its move once stopped, even a mate
+        output.reset();
+        engine.handle("go infinite");
+        Thread.sleep(100);
+        engine.handle("isready");
+        if (!output.toString().contains("readyok") || output.toString().contains("bestmove"))
+            throw new UnitTestException("Infinite search is wrong: " + output);
+        engine.handle("stop");
+        if (!output.toString().contains("bestmove a1a8"))
+            throw new UnitTestException("Stopping is wrong: " + output);
+
+        // A stop right behind the go is not lost
+        output.reset();
+        engine.handle("position startpos");
+        engine.handle("go infinite");
+        engine.handle("stop");
+        if (!output.toString().contains("bestmove "))
+            throw new UnitTestException("Early stop is wrong: " + output);
+
+        // Clock and fixed time searches end well within their budgets
+        long start = System.nanoTime();
+        output.reset();
+        engine.handle("go wtime 3000 btime 3000 winc 0 binc 0");
+        awaitBestMove(output, 1, 3_000);
+        engine.handle("go movetime 200");
+        awaitBestMove(output, 2, 3_000);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (elapsed > 1_500)
+            throw new UnitTestException("Time use is wrong: " + elapsed + " ms");
+
+        // Bad input is reported, not fatal
+        output.reset();
+        engine.handle("position startpos moves e2e5");
+        engine.handle("position fen not a fen");
+        engine.handle("setoption name Hash value lots");
+        engine.handle("setoption name EvalFile value /nonexistent.nnue");
+        engine.handle("flip");
+        if (output.toString().split("info string", -1).length != 6 || !engine.board.equals(new Chessboard()))
+            throw new UnitTestException("Bad input is wrong: " + output);
+
+        if (engine.handle("quit"))
+            throw new UnitTestException("Quit is wrong.");
+    }
+
+    // Wait until the output holds this many bestmove lines
+    private static String awaitBestMove(ByteArrayOutputStream output, int count, long milliseconds)
+            throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + milliseconds;
+        while (output.toString().split("bestmove", -1).length <= count) {
+            if (System.currentTimeMillis() > deadline)
+                throw new UnitTestException("No bestmove after " + milliseconds + " ms: " + output);
+            Thread.sleep(5);
+        }
+        return output.toString();
+    }
+}
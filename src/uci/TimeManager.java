@@ -0,0 +1,100 @@
+package uci;
+
+import representation.UnitTestException;
+
+class TimeManager {
+
+    // https://www.chessprogramming.org/Time_Management
+
+    // Moves the remaining time is spread over when the GUI gives no moves to go
+    private static final int HORIZON = 30;
+
+    // The hard limit allows this many soft budgets, and never more than this share of the clock
+    private static final int HARD_BUDGETS = 4;
+    private static final int HARD_SHARE   = 3;
+
+    // Percent of the soft budget after which no new iteration starts, by how many iterations
+    // in a row kept the same best move. An unsettled root gets more time, a settled one less.
+    private static final int[] STABILITY_SCALE = {180, 130, 100, 80, 65};
+
+    // Attributes
+    private long soft;
+    private long hard;
+    private int  bestMove;
+    private int  stability;
+
+    // Constructor, with everything in milliseconds and zero for whatever the GUI left out
+    TimeManager(long time, long increment, int movesToGo, long overhead) {
+
+        long left    = Math.max(1, time - overhead);
+        int  horizon = movesToGo > 0 ? Math.min(movesToGo, HORIZON) : HORIZON;
+
+        // With the last move before the time control, most of what is left may go to it
+        long ceiling = movesToGo == 1 ? left * 9 / 10 : left / HARD_SHARE;
+
+        this.soft = Math.max(1, left / horizon + increment * 3 / 4);
+        this.hard = Math.max(1, Math.min(this.soft * HARD_BUDGETS, ceiling));
+        this.soft = Math.min(this.soft, this.hard);
+    }
+
+    // A fixed time per move, used up to the last of it
+    static TimeManager fixed(long moveTime, long overhead) {
+
+        TimeManager manager = new TimeManager(0, 0, 0, 0);
+        manager.hard = Math.max(1, moveTime - overhead);
+        manager.soft = manager.hard;
+        return manager;
+    }
+
+    long getSoft() { return this.soft; }
+    long getHard() { return this.hard; }
+
+    // Whether to stop after an iteration that finished with this best move after this long
+    boolean isDone(int bestMove, long elapsed) {
+
+        this.stability = bestMove == this.bestMove ? this.stability + 1 : 0;
+        this.bestMove  = bestMove;
+        int scale = STABILITY_SCALE[Math.min(this.stability, STABILITY_SCALE.length - 1)];
+        return elapsed >= this.soft * scale / 100;
+    }
+
+    // Unit testing
+    public static void main(String[] args) {
+
+        // A minute with no increment goes over many moves, and the hard limit stays well clear of the clock
+        TimeManager manager = new TimeManager(60_000, 0, 0, 50);
+        if (manager.getSoft() != (60_000 - 50) / HORIZON || manager.getHard() != 4 * manager.getSoft())
+            throw new UnitTestException("Sudden death budget is wrong.");
+
+        // The increment is mostly spent
+        manager = new TimeManager(10_000, 1_000, 0, 0);
+        if (manager.getSoft() != 10_000 / HORIZON + 750)
+            throw new UnitTestException("Increment budget is wrong.");
+        if (manager.getHard() != 10_000 / HARD_SHARE)
+            throw new UnitTestException("Hard limit is wrong: " + manager.getHard());
+
+        // The last move of a time control may use most of the clock, and a few moves share it
+        if (new TimeManager(5_000, 0, 1, 0).getHard() != 4_500)
+            throw new UnitTestException("Last move budget is wrong.");
+        if (new TimeManager(6_000, 0, 3, 0).getSoft() != 2_000)
+            throw new UnitTestException("Moves to go budget is wrong.");
+
+        // Nearly flagged, something is still left to search with
+        manager = new TimeManager(20, 0, 0, 50);
+        if (manager.getSoft() < 1 || manager.getHard() < manager.getSoft())
+            throw new UnitTestException("Low time budget is wrong.");
+
+        // Fixed time is used to the end, less the overhead
+        manager = fixed(1_000, 30);
+        if (manager.getSoft() != 970 || manager.getHard() != 970)
+            throw new UnitTestException("Fixed budget is wrong.");
+
+        // A best move that keeps changing earns more time than one that settles
+        manager = new TimeManager(30_000, 0, 0, 0);
+        long soft = manager.getSoft();
+        if (manager.isDone(1, soft * 3 / 2) || manager.isDone(2, soft * 3 / 2))
+            throw new UnitTestException("Unstable best move stopped too early.");
+        if (manager.isDone(2, soft * 9 / 10) || manager.isDone(2, soft * 9 / 10) || !manager.isDone(2, soft * 9 / 10))
+            throw new UnitTestException("Stable best move is wrong.");
+    }
+}
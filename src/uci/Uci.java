@@ -0,0 +1,20 @@
+package uci;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+public class Uci {
+
+    // Entry point for GUIs, one command per line on standard input until quit or end of input.
+    // Networks need the JVM option --add-modules jdk.incubator.vector.
+    public static void main(String[] args) throws IOException {
+
+        Engine engine = new Engine(System.out);
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+        for (String line = input.readLine(); line != null; line = input.readLine())
+            if (!engine.handle(line))
+                return;
+        engine.handle("quit");
+    }
+}